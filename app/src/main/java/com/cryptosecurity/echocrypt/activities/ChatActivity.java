@@ -2,54 +2,87 @@ package com.cryptosecurity.echocrypt.activities;
 
 import android.os.Bundle;
 import android.text.TextUtils;
-import android.util.Log;
 import android.widget.EditText;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cryptosecurity.echocrypt.R;
 import com.cryptosecurity.echocrypt.adapters.ChatAdapter;
+import com.cryptosecurity.echocrypt.chat.ChatViewModel;
+import com.cryptosecurity.echocrypt.chat.FirestoreMessageSource;
+import com.cryptosecurity.echocrypt.chat.GroupSession;
+import com.cryptosecurity.echocrypt.chat.LocalEchoCache;
+import com.cryptosecurity.echocrypt.chat.ReadReceiptWriter;
+import com.cryptosecurity.echocrypt.chat.MessageOutbox;
+import com.cryptosecurity.echocrypt.chat.MessageRenderModel;
+import com.cryptosecurity.echocrypt.chat.MessageSyncEngine;
+import com.cryptosecurity.echocrypt.chat.MessageTimeline;
+import com.cryptosecurity.echocrypt.chat.SqliteMessageStore;
+import com.cryptosecurity.echocrypt.contacts.PublicKeyDirectory;
 import com.cryptosecurity.echocrypt.crypto.EncryptionHelper;
 import com.cryptosecurity.echocrypt.crypto.KeyManager;
+import com.cryptosecurity.echocrypt.crypto.SessionKeyCache;
 import com.cryptosecurity.echocrypt.models.ChatMessage;
-import com.cryptosecurity.echocrypt.models.User;
+import com.cryptosecurity.echocrypt.models.Group;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.Blob;
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Query;
 
 import java.security.PrivateKey;
-import java.security.PublicKey;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import javax.crypto.SecretKey;
 
 public class ChatActivity extends AppCompatActivity {
+    private static final int PREFETCH_DISTANCE = MessageSyncEngine.PAGE_SIZE / 2;
+    // Shared by every chat screen and never shut down, so late Firestore callbacks always have
+    // somewhere to run; the idle thread times out on its own.
+    private static final ExecutorService SYNC_EXECUTOR = createSyncExecutor();
+
     // ... (variables are the same)
     private RecyclerView recyclerViewChat;
+    private LinearLayoutManager layoutManager;
     private EditText editTextMessage;
     private ImageButton buttonSend;
     private Toolbar toolbar;
     private ChatAdapter chatAdapter;
-    private List<ChatMessage> messageList;
-    private Map<String, ChatMessage> messageMap; // NEW: Use a Map for efficient updates
+    private MessageTimeline<MessageRenderModel> messageTimeline;
     private FirebaseFirestore db;
     private FirebaseAuth mAuth;
     private String currentUserId;
     private String receiverId;
     private String chatRoomId;
+    private ChatViewModel viewModel; // timeline, session and sync, retained across configuration changes
     private KeyManager keyManager;
-    private SecretKey sharedSecret;
+    private String sessionFingerprint; // the receiver key the session is being set up for
+    private SessionKeyCache sessionKeyCache;
+    private PublicKeyDirectory publicKeyDirectory;
+    private final LocalEchoCache localEchoCache = LocalEchoCache.getInstance();
+    private MessageOutbox messageOutbox;
+    private final MessageOutbox.Listener outboxListener = (roomId, docId, e) -> runOnUiThread(() -> {
+        if (roomId.equals(chatRoomId)) {
+            messageTimeline.removeById(docId); // drop the local echo of the rejected message
+            Toast.makeText(this, "Failed to send message.", Toast.LENGTH_SHORT).show();
+        }
+    });
+    private String newestMessageId;
+    private final ReadReceiptWriter readReceiptWriter = ReadReceiptWriter.getInstance();
+    private boolean resumed; // only messages on screen while we are in front count as read
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -59,124 +92,277 @@ public class ChatActivity extends AppCompatActivity {
         // ... (initialization is the same)
         receiverId = getIntent().getStringExtra("USER_ID");
         String receiverEmail = getIntent().getStringExtra("USER_EMAIL");
+        String groupId = getIntent().getStringExtra("GROUP_ID"); // set instead of USER_ID for group chats
         db = FirebaseFirestore.getInstance();
         mAuth = FirebaseAuth.getInstance();
         currentUserId = mAuth.getCurrentUser().getUid();
-        keyManager = new KeyManager();
+        keyManager = KeyManager.getInstance();
+        sessionKeyCache = SessionKeyCache.getInstance();
+        sessionKeyCache.enableDiskTier(this); // loads its Keystore key in the background
+        publicKeyDirectory = PublicKeyDirectory.getInstance();
+        publicKeyDirectory.enableDiskTier(this);
         toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
-        getSupportActionBar().setTitle(receiverEmail);
+        getSupportActionBar().setTitle(groupId != null ? getIntent().getStringExtra("GROUP_NAME") : receiverEmail);
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         recyclerViewChat = findViewById(R.id.recyclerViewChat);
         editTextMessage = findViewById(R.id.editTextMessage);
         buttonSend = findViewById(R.id.buttonSend);
         buttonSend.setEnabled(false);
 
-        messageList = new ArrayList<>();
-        messageMap = new HashMap<>(); // NEW: Initialize the map
-        chatAdapter = new ChatAdapter(messageList);
-        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        // After a rotation the ViewModel still holds the decrypted timeline and the running sync,
+        // so the new adapter simply binds to it
+        viewModel = new ViewModelProvider(this).get(ChatViewModel.class);
+        viewModel.init(currentUserId);
+        // Rows are rendered on the decryption worker; the adapter only copies fields into views
+        messageTimeline = viewModel.getTimeline();
+        chatAdapter = new ChatAdapter(messageTimeline, viewModel.getRenderer());
+        messageTimeline.setListener(chatAdapter);
+        viewModel.setTimelineObserver(() -> {
+            followNewestMessage();
+            markVisibleRead();
+        });
+        // One value resolves the tick of every sent row; the adapter rebinds only the rows it moves past
+        chatAdapter.setReadUpTo(viewModel.getReadUpTo());
+        viewModel.setReadReceiptListener(chatAdapter::setReadUpTo);
+        newestMessageId = messageTimeline.isEmpty() ? null : messageTimeline.getId(messageTimeline.size() - 1);
+        layoutManager = new LinearLayoutManager(this);
         layoutManager.setStackFromEnd(true);
         recyclerViewChat.setLayoutManager(layoutManager);
         recyclerViewChat.setAdapter(chatAdapter);
-        chatRoomId = getChatRoomId(currentUserId, receiverId);
+        recyclerViewChat.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                // Prefetch the next older page before the user reaches the top
+                if (dy < 0 && viewModel.isSyncing()
+                        && layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+                    viewModel.getSyncEngine().loadOlder();
+                }
+                markVisibleRead();
+            }
+        });
+        chatRoomId = groupId != null ? groupId : getChatRoomId(currentUserId, receiverId);
+        messageOutbox = MessageOutbox.getInstance(this);
+        messageOutbox.addListener(outboxListener);
         buttonSend.setOnClickListener(v -> sendMessage());
-        initSecureSession();
+        viewModel.watchReadReceipts(db, chatRoomId,
+                groupId != null ? Collections.emptyList() : Collections.singletonList(receiverId));
+        if (groupId != null) {
+            initGroupSession(groupId);
+        } else if (viewModel.getSharedSecret() == null) {
+            initSecureSession();
+        } else {
+            buttonSend.setEnabled(true);
+        }
+    }
+
+    private void initGroupSession(String groupId) {
+        // Each message is sealed once with our sender key; GroupSession hands that key to every member
+        viewModel.openGroup(db, groupId, currentUserId, new GroupSession.Listener() {
+            @Override
+            public void onReady(Group group) {
+                getSupportActionBar().setTitle(group.getName());
+                buttonSend.setEnabled(true);
+                listenForMessages();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                buttonSend.setEnabled(false);
+                Toast.makeText(ChatActivity.this, "Error: Could not open secure group session.", Toast.LENGTH_LONG).show();
+            }
+        });
     }
 
     private void initSecureSession() {
-        // ... (this method is the same)
-        db.collection("users").document(receiverId).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    User receiver = documentSnapshot.toObject(User.class);
-                    if (receiver != null && receiver.getPublicKey() != null && !receiver.getPublicKey().isEmpty()) {
-                        try {
-                            PublicKey theirPublicKey = EncryptionHelper.getPublicKeyFromString(receiver.getPublicKey());
-                            PrivateKey myPrivateKey = keyManager.getPrivateKey();
-                            if (myPrivateKey == null) {
-                                Toast.makeText(this, "Error: Could not retrieve your private key.", Toast.LENGTH_LONG).show();
-                                return;
-                            }
-                            sharedSecret = EncryptionHelper.generateSharedSecret(myPrivateKey, theirPublicKey);
-                            if (sharedSecret != null) {
-                                buttonSend.setEnabled(true);
-                                listenForMessages();
-                            } else {
-                                Toast.makeText(this, "Error: Could not create secure session.", Toast.LENGTH_LONG).show();
-                            }
-                        } catch (Exception e) {
-                            Log.e("ChatActivity", "Key exchange failed", e);
-                            Toast.makeText(this, "Error: Key exchange failed.", Toast.LENGTH_LONG).show();
-                        }
-                    } else {
-                        Toast.makeText(this, "Error: Could not retrieve receiver's public key.", Toast.LENGTH_LONG).show();
-                    }
-                })
-                .addOnFailureListener(e -> Toast.makeText(this, "Failed to get user details.", Toast.LENGTH_SHORT).show());
+        // Start from the cached key if there is one, so the chat is usable without a round-trip
+        publicKeyDirectory.loadCached(receiverId, cached -> {
+            if (isDestroyed()) return;
+            if (cached != null) {
+                startSecureSession(cached);
+            }
+            revalidateReceiverKey(cached);
+        });
+    }
+
+    // Revalidates in the background; only a cold cache or a changed key needs more work
+    private void revalidateReceiverKey(PublicKeyDirectory.Entry cached) {
+        publicKeyDirectory.refresh(receiverId, new PublicKeyDirectory.Callback() {
+            @Override
+            public void onKey(PublicKeyDirectory.Entry entry) {
+                if (isDestroyed()) return;
+                if (cached == null || !cached.fingerprint.equals(entry.fingerprint)) {
+                    startSecureSession(entry);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                if (cached != null || isDestroyed()) return;
+                if (e == null) {
+                    Toast.makeText(ChatActivity.this, "Error: Could not retrieve receiver's public key.", Toast.LENGTH_LONG).show();
+                } else {
+                    Toast.makeText(ChatActivity.this, "Failed to get user details.", Toast.LENGTH_SHORT).show();
+                }
+            }
+        });
+    }
+
+    private void startSecureSession(PublicKeyDirectory.Entry receiverKey) {
+        sessionFingerprint = receiverKey.fingerprint;
+        String peerId = receiverId;
+        // Neither the session key cache's disk tier, the Keystore lookup nor the key agreement
+        // runs on the main thread
+        CompletableFuture.runAsync(() -> {
+            // Reuse the session key if we already derived it for this exact public key
+            SecretKey secret = sessionKeyCache.get(peerId, receiverKey.publicKeyString);
+            PrivateKey myPrivateKey = null;
+            if (secret == null) {
+                myPrivateKey = keyManager.getPrivateKey();
+                secret = myPrivateKey != null
+                        ? EncryptionHelper.generateSharedSecret(myPrivateKey, receiverKey.publicKey) : null;
+                if (secret != null) {
+                    sessionKeyCache.put(peerId, receiverKey.publicKeyString, secret);
+                }
+            }
+            SecretKey result = secret;
+            boolean noPrivateKey = secret == null && myPrivateKey == null;
+            runOnUiThread(() -> {
+                // Dropped if the receiver's key changed again in the meantime
+                if (isDestroyed() || !receiverKey.fingerprint.equals(sessionFingerprint)) return;
+                if (noPrivateKey) {
+                    Toast.makeText(this, "Error: Could not retrieve your private key.", Toast.LENGTH_LONG).show();
+                } else if (result == null) {
+                    Toast.makeText(this, "Error: Could not create secure session.", Toast.LENGTH_LONG).show();
+                } else {
+                    onSecureSession(result);
+                }
+            });
+        });
+    }
+
+    private void onSecureSession(SecretKey secret) {
+        viewModel.setSharedSecret(secret);
+        buttonSend.setEnabled(true);
+        listenForMessages();
     }
 
     private void sendMessage() {
         // ... (this method is the same)
         String messageText = editTextMessage.getText().toString().trim();
-        if (TextUtils.isEmpty(messageText) || sharedSecret == null) {
-            if (sharedSecret == null) Toast.makeText(this, "Secure session not ready.", Toast.LENGTH_SHORT).show();
+        GroupSession groupSession = viewModel.getGroupSession();
+        SecretKey sharedSecret = viewModel.getSharedSecret();
+        boolean ready = groupSession != null ? groupSession.isReady() : sharedSecret != null;
+        if (TextUtils.isEmpty(messageText) || !ready) {
+            if (!ready) Toast.makeText(this, "Secure session not ready.", Toast.LENGTH_SHORT).show();
             return;
         }
-        String encryptedMessage = EncryptionHelper.encrypt(messageText, sharedSecret);
-        if (encryptedMessage == null) {
+        byte[] envelope = groupSession != null
+                ? groupSession.seal(messageText)
+                : EncryptionHelper.encryptToEnvelope(messageText, sharedSecret);
+        if (envelope == null) {
             Toast.makeText(this, "Encryption failed.", Toast.LENGTH_SHORT).show();
             return;
         }
-        ChatMessage chatMessage = new ChatMessage(encryptedMessage, currentUserId, receiverId);
+        ChatMessage chatMessage = new ChatMessage(null, currentUserId, receiverId);
+        chatMessage.setId(UUID.randomUUID().toString());
+        chatMessage.setPayload(Blob.fromBytes(envelope));
         editTextMessage.setText("");
-        db.collection("chats").document(chatRoomId)
-                .collection("messages")
-                .add(chatMessage)
-                .addOnFailureListener(e -> Toast.makeText(ChatActivity.this, "Failed to send message.", Toast.LENGTH_SHORT).show());
+        // The listener's pending-write and server-timestamp events for this id reuse the plaintext
+        localEchoCache.put(chatRoomId, chatMessage.getId(), currentUserId, envelope, messageText);
+        // Persisted before it is sent, so it survives the app being killed; failures are retried
+        messageOutbox.send(chatRoomId, chatMessage);
+
+        // Show it now instead of after the round-trip; snapshot events for the id replace it in place
+        ChatMessage echo = new ChatMessage(messageText, currentUserId, receiverId);
+        echo.setId(chatMessage.getId());
+        messageTimeline.upsert(echo.getId(), viewModel.getRenderer().renderLocalEcho(echo));
+        followNewestMessage();
     }
 
     private void listenForMessages() {
         CollectionReference messagesRef = db.collection("chats").document(chatRoomId).collection("messages");
 
-        messagesRef.orderBy("timestamp", Query.Direction.ASCENDING)
-                .addSnapshotListener((snapshots, e) -> {
-                    if (e != null || sharedSecret == null) return;
-
-                    if (snapshots != null) {
-                        for (DocumentChange dc : snapshots.getDocumentChanges()) {
-                            String docId = dc.getDocument().getId();
-                            ChatMessage encryptedMessage = dc.getDocument().toObject(ChatMessage.class);
-                            String decryptedText = EncryptionHelper.decrypt(encryptedMessage.getMessage(), sharedSecret);
-                            encryptedMessage.setMessage(decryptedText);
-
-                            switch (dc.getType()) {
-                                case ADDED:
-                                    messageMap.put(docId, encryptedMessage);
-                                    break;
-                                case MODIFIED:
-                                    // NEW: Handle the modification. This happens when the server
-                                    // adds the timestamp to our optimistically sent message.
-                                    messageMap.put(docId, encryptedMessage);
-                                    break;
-                                case REMOVED:
-                                    messageMap.remove(docId);
-                                    break;
-                            }
-                        }
-
-                        // NEW: Rebuild the list from the map and sort it.
-                        messageList.clear();
-                        messageList.addAll(messageMap.values());
-                        Collections.sort(messageList, (o1, o2) -> {
-                            if (o1.getTimestamp() == null) return 1; // Put sending messages at the end
-                            if (o2.getTimestamp() == null) return -1;
-                            return o1.getTimestamp().compareTo(o2.getTimestamp());
-                        });
-
-                        chatAdapter.notifyDataSetChanged();
-                        recyclerViewChat.scrollToPosition(messageList.size() - 1);
-                    }
-                });
+        // Stored history renders first; the server is only asked for what is newer than the
+        // last sync, and older pages come from disk before falling back to Firestore.
+        // A no-op when the ViewModel kept the sync running across a configuration change.
+        viewModel.startSync(chatRoomId,
+                SqliteMessageStore.getInstance(this),
+                new FirestoreMessageSource(messagesRef, SYNC_EXECUTOR),
+                SYNC_EXECUTOR);
+    }
+
+    // Follow new messages at the bottom, but stay put when an older page is prepended
+    private void followNewestMessage() {
+        String lastId = messageTimeline.isEmpty() ? null : messageTimeline.getId(messageTimeline.size() - 1);
+        if (lastId != null && !lastId.equals(newestMessageId)) {
+            recyclerViewChat.scrollToPosition(messageTimeline.size() - 1);
+        }
+        newestMessageId = lastId;
+    }
+
+    // Coalesced by ReadReceiptWriter into at most one write per interval, however much is scrolled
+    private void markVisibleRead() {
+        if (!resumed) return;
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) return;
+        // Only a received message on screen moves the mark; our own are read by definition
+        for (int i = Math.min(last, messageTimeline.size() - 1); i >= first; i--) {
+            MessageRenderModel model = messageTimeline.get(i);
+            Date timestamp = model.getTimestamp();
+            if (!model.outgoing && timestamp != null) {
+                readReceiptWriter.markRead(chatRoomId, currentUserId, timestamp.getTime());
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        resumed = true;
+        markVisibleRead();
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        resumed = false;
+        readReceiptWriter.flush(chatRoomId);
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        viewModel.resumeSync();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        // A rotation keeps the listener attached; the next instance picks it up from the ViewModel
+        if (!isChangingConfigurations()) {
+            viewModel.pauseSync();
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        // Only detach from the ViewModel; it stops the sync and pipeline itself in onCleared()
+        messageTimeline.setListener(null);
+        viewModel.setTimelineObserver(null);
+        viewModel.setGroupListener(null);
+        viewModel.setReadReceiptListener(null);
+        messageOutbox.removeListener(outboxListener);
+    }
+
+    private static ExecutorService createSyncExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "MessageSync"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
     }
 
     // ... (getChatRoomId and onSupportNavigateUp are the same)
@@ -19,22 +19,42 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.cryptosecurity.echocrypt.R;
 import com.cryptosecurity.echocrypt.adapters.ContactListAdapter;
+import com.cryptosecurity.echocrypt.chat.GroupSession;
+import com.cryptosecurity.echocrypt.chat.LocalEchoCache;
+import com.cryptosecurity.echocrypt.chat.MessageOutbox;
+import com.cryptosecurity.echocrypt.contacts.ContactSearchIndex;
+import com.cryptosecurity.echocrypt.contacts.ContactSearcher;
+import com.cryptosecurity.echocrypt.contacts.PublicKeyDirectory;
+import com.cryptosecurity.echocrypt.contacts.SessionWarmer;
+import com.cryptosecurity.echocrypt.contacts.UserDirectory;
+import com.cryptosecurity.echocrypt.crypto.SessionKeyCache;
 import com.cryptosecurity.echocrypt.models.User;
+import com.cryptosecurity.echocrypt.startup.AppStartup;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.CollectionReference;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
-import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class ContactListActivity extends AppCompatActivity {
 
+    private static final int PREFETCH_DISTANCE = UserDirectory.PAGE_SIZE / 2;
+
     private RecyclerView recyclerViewContacts;
     private ProgressBar progressBar;
     private ContactListAdapter contactListAdapter;
-    private List<User> userList;
+    private LinearLayoutManager layoutManager;
     private Toolbar toolbar;
     private EditText editTextSearch; // NEW: Search bar variable
+    private ContactSearcher contactSearcher;
+    private SessionWarmer sessionWarmer;
+    private UserDirectory browseDirectory; // the directory page by page, in email order
+    private UserDirectory searchDirectory; // server-side prefix matches for the search box
+    private final Map<String, User> browsedUsers = new HashMap<>();
+    private final Map<String, User> searchedUsers = new HashMap<>();
+    private String serverQuery = "";
 
     private FirebaseFirestore db;
     private FirebaseAuth mAuth;
@@ -53,6 +73,11 @@ public class ContactListActivity extends AppCompatActivity {
             return;
         }
 
+        PublicKeyDirectory.getInstance().enableDiskTier(this);
+        SessionKeyCache.getInstance().enableDiskTier(this);
+        // Starts sending anything left in the outbox when the app was last closed
+        MessageOutbox.getInstance(this);
+
         toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
@@ -60,10 +85,24 @@ public class ContactListActivity extends AppCompatActivity {
         progressBar = findViewById(R.id.progressBar);
         editTextSearch = findViewById(R.id.editTextSearch); // NEW: Link search bar
 
-        userList = new ArrayList<>();
-        contactListAdapter = new ContactListAdapter(this, userList);
-        recyclerViewContacts.setLayoutManager(new LinearLayoutManager(this));
+        sessionWarmer = new SessionWarmer();
+        contactListAdapter = new ContactListAdapter(this, sessionWarmer);
+        layoutManager = new LinearLayoutManager(this);
+        recyclerViewContacts.setLayoutManager(layoutManager);
         recyclerViewContacts.setAdapter(contactListAdapter);
+        // Searches run on a worker and land in the same adapter as a diff
+        contactSearcher = new ContactSearcher(this::onSearchResults);
+
+        // Infinite scroll: fetch the next page before the user reaches the end
+        recyclerViewContacts.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0 && layoutManager.findLastVisibleItemPosition()
+                        >= contactListAdapter.getItemCount() - PREFETCH_DISTANCE) {
+                    (serverQuery.isEmpty() ? browseDirectory : searchDirectory).loadMore();
+                }
+            }
+        });
 
         // NEW: Add a listener to the search bar
         editTextSearch.addTextChangedListener(new TextWatcher() {
@@ -72,7 +111,7 @@ public class ContactListActivity extends AppCompatActivity {
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
-                filter(s.toString());
+                contactSearcher.search(s.toString());
             }
 
             @Override
@@ -83,17 +122,15 @@ public class ContactListActivity extends AppCompatActivity {
         fetchUsers();
     }
 
-    // NEW: Method to filter the user list based on search query
-    private void filter(String text) {
-        ArrayList<User> filteredList = new ArrayList<>();
-        for (User item : userList) {
-            if (item.getEmail().toLowerCase().contains(text.toLowerCase())) {
-                filteredList.add(item);
-            }
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (contactSearcher != null) {
+            contactSearcher.shutdown();
+        }
+        if (sessionWarmer != null) {
+            sessionWarmer.shutdown();
         }
-        // Update the adapter with the filtered list
-        contactListAdapter = new ContactListAdapter(this, filteredList);
-        recyclerViewContacts.setAdapter(contactListAdapter);
     }
 
     // ... (onCreateOptionsMenu and onOptionsItemSelected are the same)
@@ -107,6 +144,14 @@ public class ContactListActivity extends AppCompatActivity {
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
         if (item.getItemId() == R.id.action_logout) {
             mAuth.signOut();
+            // Stop warm-ups first so none lands in the caches after they are cleared
+            sessionWarmer.shutdown();
+            // Session keys belong to the signed-in identity
+            SessionKeyCache.getInstance().clear();
+            PublicKeyDirectory.getInstance().clear();
+            GroupSession.clearKeys();
+            LocalEchoCache.getInstance().clear();
+            AppStartup.clear();
             Intent intent = new Intent(ContactListActivity.this, LoginActivity.class);
             intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
             startActivity(intent);
@@ -117,29 +162,68 @@ public class ContactListActivity extends AppCompatActivity {
     }
 
     private void fetchUsers() {
-        // ... (fetchUsers method remains the same)
         progressBar.setVisibility(View.VISIBLE);
         String currentUserId = mAuth.getCurrentUser().getUid();
+        CollectionReference usersRef = db.collection("users");
+
+        browseDirectory = new UserDirectory(usersRef, currentUserId, new UserDirectory.Callback() {
+            @Override
+            public void onPage(String query, List<User> users, boolean hasMore) {
+                progressBar.setVisibility(View.GONE);
+                addUsers(browsedUsers, users);
+            }
+
+            @Override
+            public void onError(String query, Exception e) {
+                showDirectoryError(e);
+            }
+        });
+        searchDirectory = new UserDirectory(usersRef, currentUserId, new UserDirectory.Callback() {
+            @Override
+            public void onPage(String query, List<User> users, boolean hasMore) {
+                addUsers(searchedUsers, users);
+            }
+
+            @Override
+            public void onError(String query, Exception e) {
+                showDirectoryError(e);
+            }
+        });
+        // Usually already fetched, or in flight, since the splash screen
+        browseDirectory.usePrefetchedFirstPage(AppStartup.takeDirectoryPrefetch());
+        browseDirectory.setQuery("");
+    }
+
+    private void showDirectoryError(Exception e) {
+        progressBar.setVisibility(View.GONE);
+        Toast.makeText(ContactListActivity.this, "Error getting users: " + e, Toast.LENGTH_SHORT).show();
+    }
+
+    // Local results for a (debounced) query; a new query also starts a server-side prefix search
+    private void onSearchResults(String query, List<User> results) {
+        contactListAdapter.submitList(results);
+        String normalized = ContactSearchIndex.normalize(query);
+        if (!normalized.equals(serverQuery)) {
+            serverQuery = normalized;
+            searchedUsers.clear();
+            if (!normalized.isEmpty()) {
+                searchDirectory.setQuery(normalized);
+            }
+            updateSearchIndex();
+        }
+    }
+
+    private void addUsers(Map<String, User> target, List<User> users) {
+        for (User user : users) {
+            target.put(user.getUid(), user);
+        }
+        updateSearchIndex();
+    }
 
-        db.collection("users")
-                .get()
-                .addOnCompleteListener(task -> {
-                    progressBar.setVisibility(View.GONE);
-                    if (task.isSuccessful()) {
-                        userList.clear();
-                        for (QueryDocumentSnapshot document : task.getResult()) {
-                            User user = document.toObject(User.class);
-                            if (!user.getUid().equals(currentUserId)) {
-                                userList.add(user);
-                            }
-                        }
-                        // Initially, show the full list
-                        contactListAdapter = new ContactListAdapter(this, userList);
-                        recyclerViewContacts.setAdapter(contactListAdapter);
-
-                    } else {
-                        Toast.makeText(ContactListActivity.this, "Error getting users: " + task.getException(), Toast.LENGTH_SHORT).show();
-                    }
-                });
+    // The local index covers the browsed pages plus the server matches for the current query
+    private void updateSearchIndex() {
+        Map<String, User> known = new HashMap<>(browsedUsers);
+        known.putAll(searchedUsers);
+        contactSearcher.setContacts(known.values());
     }
 }
\ No newline at end of file
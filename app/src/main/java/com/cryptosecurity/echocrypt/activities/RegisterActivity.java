@@ -69,39 +69,9 @@ public class RegisterActivity extends AppCompatActivity {
                 .addOnCompleteListener(task -> {
                     if (task.isSuccessful()) {
                         // NEW: Generate and store the cryptographic keys
-                        KeyManager keyManager = new KeyManager();
-                        keyManager.generateKeyPair();
-                        String publicKeyString = keyManager.getPublicKeyAsString();
-
-                        if (publicKeyString == null) {
-                            Toast.makeText(this, "Critical error: Could not generate keys.", Toast.LENGTH_LONG).show();
-                            progressBar.setVisibility(View.GONE);
-                            buttonRegister.setEnabled(true);
-                            return;
-                        }
-
-                        String userId = mAuth.getCurrentUser().getUid();
-
-                        Map<String, Object> user = new HashMap<>();
-                        user.put("email", email);
-                        user.put("uid", userId);
-                        user.put("publicKey", publicKeyString); // NEW: Save the public key
-
-                        db.collection("users").document(userId)
-                                .set(user)
-                                .addOnCompleteListener(saveTask -> {
-                                    progressBar.setVisibility(View.GONE);
-                                    buttonRegister.setEnabled(true);
-                                    if(saveTask.isSuccessful()){
-                                        Toast.makeText(RegisterActivity.this, "Registration successful!", Toast.LENGTH_LONG).show();
-                                        Intent intent = new Intent(RegisterActivity.this, ContactListActivity.class);
-                                        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
-                                        startActivity(intent);
-                                        finish();
-                                    } else {
-                                        Toast.makeText(RegisterActivity.this, "Failed to save user data.", Toast.LENGTH_LONG).show();
-                                    }
-                                });
+                        // Key generation is Keystore IPC, so it runs off the main thread
+                        KeyManager.getInstance().generateKeyPairAsync()
+                                .thenAccept(publicKeyString -> runOnUiThread(() -> saveUser(email, publicKeyString)));
                     } else {
                         Toast.makeText(RegisterActivity.this, "Registration failed: " + task.getException().getMessage(), Toast.LENGTH_LONG).show();
                         progressBar.setVisibility(View.GONE);
@@ -109,4 +79,36 @@ public class RegisterActivity extends AppCompatActivity {
                     }
                 });
     }
+
+    private void saveUser(String email, String publicKeyString) {
+        if (publicKeyString == null) {
+            Toast.makeText(this, "Critical error: Could not generate keys.", Toast.LENGTH_LONG).show();
+            progressBar.setVisibility(View.GONE);
+            buttonRegister.setEnabled(true);
+            return;
+        }
+
+        String userId = mAuth.getCurrentUser().getUid();
+
+        Map<String, Object> user = new HashMap<>();
+        user.put("email", email);
+        user.put("uid", userId);
+        user.put("publicKey", publicKeyString); // NEW: Save the public key
+
+        db.collection("users").document(userId)
+                .set(user)
+                .addOnCompleteListener(saveTask -> {
+                    progressBar.setVisibility(View.GONE);
+                    buttonRegister.setEnabled(true);
+                    if(saveTask.isSuccessful()){
+                        Toast.makeText(RegisterActivity.this, "Registration successful!", Toast.LENGTH_LONG).show();
+                        Intent intent = new Intent(RegisterActivity.this, ContactListActivity.class);
+                        intent.addFlags(Intent.FLAG_ACTIVITY_CLEAR_TOP | Intent.FLAG_ACTIVITY_NEW_TASK);
+                        startActivity(intent);
+                        finish();
+                    } else {
+                        Toast.makeText(RegisterActivity.this, "Failed to save user data.", Toast.LENGTH_LONG).show();
+                    }
+                });
+    }
 }
\ No newline at end of file
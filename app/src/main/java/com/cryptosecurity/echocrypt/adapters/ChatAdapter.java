@@ -1,5 +1,7 @@
 package com.cryptosecurity.echocrypt.adapters;
 
+import android.os.Build;
+import android.text.PrecomputedText;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,34 +12,53 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cryptosecurity.echocrypt.R;
-import com.cryptosecurity.echocrypt.models.ChatMessage;
-import com.google.firebase.auth.FirebaseAuth;
+import com.cryptosecurity.echocrypt.chat.MessageRenderModel;
+import com.cryptosecurity.echocrypt.chat.MessageRenderer;
+import com.cryptosecurity.echocrypt.chat.MessageTimeline;
 
-import java.text.SimpleDateFormat;
 import java.util.List;
-import java.util.Locale;
 
-public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
-
-    private final List<ChatMessage> messageList;
-    private final String currentUserId;
+/**
+ * Binds render-ready messages. Text, time strings and status are all prepared by
+ * MessageRenderer off the main thread, so binding a row allocates nothing.
+ *
+ * Read ticks are not stored per message. Every sent message at or before the chat's single
+ * read-up-to timestamp shows as read. When that value moves, only the contiguous range of rows
+ * between the old and new value is rebound, and only their status icon.
+ *
+ * Models outlive the adapter across configuration changes, so their precomputed text may have
+ * been laid out for a font scale or locale that no longer applies. Such text is bound as plain
+ * text, which TextView lays out itself; messages rendered after this adapter reported its
+ * metrics are precomputed for the current views again.
+ */
+public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> implements MessageTimeline.Listener {
+
+    private static final Object PAYLOAD_STATUS = new Object();
+
+    private final MessageTimeline<MessageRenderModel> messageList;
+    private final MessageRenderer renderer;
+    private long readUpTo;
+    private boolean sentMetricsReported;
+    private boolean receivedMetricsReported;
 
     private static final int VIEW_TYPE_SENT = 1;
     private static final int VIEW_TYPE_RECEIVED = 2;
 
-    public ChatAdapter(List<ChatMessage> messageList) {
+    public ChatAdapter(MessageTimeline<MessageRenderModel> messageList, MessageRenderer renderer) {
         this.messageList = messageList;
-        this.currentUserId = FirebaseAuth.getInstance().getCurrentUser().getUid();
+        this.renderer = renderer;
+        // Ids follow the document, so RecyclerView can animate moves and keep reusing the same views
+        setHasStableIds(true);
     }
 
     @Override
     public int getItemViewType(int position) {
-        ChatMessage message = messageList.get(position);
-        if (message.getSenderId() != null && message.getSenderId().equals(currentUserId)) {
-            return VIEW_TYPE_SENT;
-        } else {
-            return VIEW_TYPE_RECEIVED;
-        }
+        return messageList.get(position).outgoing ? VIEW_TYPE_SENT : VIEW_TYPE_RECEIVED;
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return messageList.get(position).stableId;
     }
 
     @NonNull
@@ -46,20 +67,56 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         View view;
         if (viewType == VIEW_TYPE_SENT) {
             view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_message_sent, parent, false);
-            return new SentMessageViewHolder(view);
+            SentMessageViewHolder holder = new SentMessageViewHolder(view);
+            if (!sentMetricsReported) {
+                reportTextMetrics(true, holder.textViewMessage);
+                sentMetricsReported = true;
+            }
+            return holder;
         } else {
             view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_message_received, parent, false);
-            return new ReceivedMessageViewHolder(view);
+            ReceivedMessageViewHolder holder = new ReceivedMessageViewHolder(view);
+            if (!receivedMetricsReported) {
+                reportTextMetrics(false, holder.textViewMessage);
+                receivedMetricsReported = true;
+            }
+            return holder;
         }
     }
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
-        ChatMessage message = messageList.get(position);
-        if (getItemViewType(position) == VIEW_TYPE_SENT) {
-            ((SentMessageViewHolder) holder).bind(message);
+        MessageRenderModel model = messageList.get(position);
+        if (holder instanceof SentMessageViewHolder) {
+            ((SentMessageViewHolder) holder).bind(model, readUpTo);
         } else {
-            ((ReceivedMessageViewHolder) holder).bind(message);
+            ((ReceivedMessageViewHolder) holder).bind(model);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        // RecyclerView passes an empty list whenever a full rebind is due; PAYLOAD_STATUS is our only payload
+        if (!payloads.isEmpty()) {
+            if (holder instanceof SentMessageViewHolder) {
+                ((SentMessageViewHolder) holder).bindStatus(messageList.get(position), readUpTo);
+            }
+            return;
+        }
+        onBindViewHolder(holder, position);
+    }
+
+    /**
+     * @param timestamp The time up to which everyone else has read the chat, from ReadReceiptWatcher.
+     */
+    public void setReadUpTo(long timestamp) {
+        if (timestamp == readUpTo) return;
+        // The timeline is sorted by timestamp, so the affected rows form one range
+        int from = messageList.countAtOrBefore(Math.min(readUpTo, timestamp));
+        int to = messageList.countAtOrBefore(Math.max(readUpTo, timestamp));
+        readUpTo = timestamp;
+        if (to > from) {
+            notifyItemRangeChanged(from, to - from, PAYLOAD_STATUS);
         }
     }
 
@@ -68,10 +125,49 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
         return messageList.size();
     }
 
+    // Lets the renderer lay out text for this bubble type ahead of time
+    private void reportTextMetrics(boolean outgoing, TextView textView) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            renderer.setTextMetrics(outgoing, textView.getTextMetricsParams());
+        }
+    }
+
+    // TextView rejects PrecomputedText laid out with other metrics than its own
+    private static void setMessageText(TextView textView, CharSequence text) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && text instanceof PrecomputedText
+                && !((PrecomputedText) text).getParams().equals(textView.getTextMetricsParams())) {
+            textView.setText(text.toString());
+        } else {
+            textView.setText(text);
+        }
+    }
+
+    // --- MessageTimeline.Listener: forward precise changes instead of rebinding everything ---
+    @Override
+    public void onItemInserted(int position) {
+        notifyItemInserted(position);
+    }
+
+    @Override
+    public void onItemRemoved(int position) {
+        notifyItemRemoved(position);
+    }
+
+    @Override
+    public void onItemMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+    }
+
+    @Override
+    public void onItemChanged(int position) {
+        notifyItemChanged(position);
+    }
+
     static class SentMessageViewHolder extends RecyclerView.ViewHolder {
         TextView textViewMessage;
         TextView textViewTimestamp;
         ImageView imageViewStatus;
+        int boundStatus = -1; // setImageResource() inflates the drawable, so skip it when unchanged
 
         SentMessageViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -80,25 +176,24 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             imageViewStatus = itemView.findViewById(R.id.imageViewStatus);
         }
 
-        void bind(ChatMessage message) {
-            textViewMessage.setText(message.getMessage());
-            if (message.getTimestamp() != null) {
-                SimpleDateFormat sdf = new SimpleDateFormat("h:mm a", Locale.getDefault());
-                textViewTimestamp.setText(sdf.format(message.getTimestamp()));
-
-                // NEW: Logic for double tick (read status) can be added here in the future.
-                // For now, a server timestamp means it was delivered.
-                imageViewStatus.setImageResource(R.drawable.ic_single_tick);
-            } else {
-                // This case is for the optimistic UI update before the server confirms.
-                textViewTimestamp.setText("Sending...");
-                imageViewStatus.setImageResource(R.drawable.ic_clock);
+        void bind(MessageRenderModel model, long readUpTo) {
+            setMessageText(textViewMessage, model.text);
+            textViewTimestamp.setText(model.timeText);
+            bindStatus(model, readUpTo);
+        }
+
+        void bindStatus(MessageRenderModel model, long readUpTo) {
+            int status = model.statusAt(readUpTo);
+            if (status != boundStatus) {
+                // A server timestamp means it was delivered; the clock shows until then
+                imageViewStatus.setImageResource(status == MessageRenderModel.STATUS_READ ? R.drawable.ic_double_tick
+                        : status == MessageRenderModel.STATUS_SENT ? R.drawable.ic_single_tick : R.drawable.ic_clock);
+                boundStatus = status;
             }
         }
     }
 
     static class ReceivedMessageViewHolder extends RecyclerView.ViewHolder {
-        // ... (This class remains unchanged)
         TextView textViewMessage;
         TextView textViewTimestamp;
 
@@ -108,14 +203,9 @@ public class ChatAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
             textViewTimestamp = itemView.findViewById(R.id.textViewTimestamp);
         }
 
-        void bind(ChatMessage message) {
-            textViewMessage.setText(message.getMessage());
-            if (message.getTimestamp() != null) {
-                SimpleDateFormat sdf = new SimpleDateFormat("h:mm a", Locale.getDefault());
-                textViewTimestamp.setText(sdf.format(message.getTimestamp()));
-            } else {
-                textViewTimestamp.setText("");
-            }
+        void bind(MessageRenderModel model) {
+            setMessageText(textViewMessage, model.text);
+            textViewTimestamp.setText(model.timeText);
         }
     }
 }
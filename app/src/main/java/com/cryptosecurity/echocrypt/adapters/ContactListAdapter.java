@@ -3,27 +3,51 @@ package com.cryptosecurity.echocrypt.adapters;
 import android.content.Context;
 import android.content.Intent;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.cryptosecurity.echocrypt.R;
 import com.cryptosecurity.echocrypt.activities.ChatActivity;
+import com.cryptosecurity.echocrypt.contacts.PublicKeyDirectory;
+import com.cryptosecurity.echocrypt.contacts.SessionWarmer;
 import com.cryptosecurity.echocrypt.models.User;
 
-import java.util.List;
+import java.util.Objects;
 
-public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.ContactViewHolder> {
+/**
+ * Contact rows backed by a ListAdapter, so a new search result is diffed against the current
+ * one on a background thread and only changed rows are rebound.
+ */
+public class ContactListAdapter extends ListAdapter<User, ContactListAdapter.ContactViewHolder> {
+
+    private static final DiffUtil.ItemCallback<User> DIFF_CALLBACK = new DiffUtil.ItemCallback<User>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull User oldUser, @NonNull User newUser) {
+            return Objects.equals(oldUser.getUid(), newUser.getUid());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull User oldUser, @NonNull User newUser) {
+            return Objects.equals(oldUser.getEmail(), newUser.getEmail());
+        }
+    };
 
-    private final List<User> userList;
     private final Context context;
+    private final PublicKeyDirectory publicKeyDirectory;
+    private final SessionWarmer sessionWarmer;
 
-    public ContactListAdapter(Context context, List<User> userList) {
+    public ContactListAdapter(Context context, SessionWarmer sessionWarmer) {
+        super(DIFF_CALLBACK);
         this.context = context;
-        this.userList = userList;
+        this.publicKeyDirectory = PublicKeyDirectory.getInstance();
+        this.sessionWarmer = sessionWarmer;
     }
 
     @NonNull
@@ -37,9 +61,20 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
     @Override
     public void onBindViewHolder(@NonNull ContactViewHolder holder, int position) {
         // Get the user at the current position
-        User user = userList.get(position);
+        User user = getItem(position);
         // Set the user's email in the TextView
         holder.textViewEmail.setText(user.getEmail());
+        // Have the key ready before the user taps, so opening the chat needs no round-trip
+        publicKeyDirectory.prefetch(user);
+        // Derive the session key too if the row stays on screen, or right away on touch-down
+        holder.uid = user.getUid();
+        sessionWarmer.warmIfLingering(holder.uid);
+        holder.itemView.setOnTouchListener((v, event) -> {
+            if (event.getActionMasked() == MotionEvent.ACTION_DOWN) {
+                sessionWarmer.warmNow(user.getUid());
+            }
+            return false; // let the click go through
+        });
 
         // Set a click listener for the entire item view
         holder.itemView.setOnClickListener(v -> {
@@ -53,13 +88,16 @@ public class ContactListAdapter extends RecyclerView.Adapter<ContactListAdapter.
     }
 
     @Override
-    public int getItemCount() {
-        return userList.size();
+    public void onViewRecycled(@NonNull ContactViewHolder holder) {
+        // The row scrolled away, so its speculative warm-up is no longer worth the work
+        sessionWarmer.cancel(holder.uid);
+        holder.uid = null;
     }
 
     // The ViewHolder class holds the UI elements for a single list item
     static class ContactViewHolder extends RecyclerView.ViewHolder {
         TextView textViewEmail;
+        String uid; // the contact currently bound to this row
 
         ContactViewHolder(@NonNull View itemView) {
             super(itemView);
@@ -0,0 +1,107 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.content.Context;
+
+import com.cryptosecurity.echocrypt.crypto.AttachmentCipher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.GeneralSecurityException;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Local stand-in for remote attachment storage, referenced from ChatMessage by attachment id.
+ *
+ * Attachments are encrypted with AttachmentCipher as they are written, one file per attachment,
+ * so the bytes on disk are exactly what would be uploaded and no attachment is ever held in
+ * memory whole. All methods block on disk I/O; call them off the main thread.
+ */
+public class AttachmentStore {
+
+    private static final String DIRECTORY = "attachments";
+    private static final String PARTIAL_SUFFIX = ".part";
+    // Ids arrive in messages from other users, so never let one name an arbitrary path
+    private static final Pattern ID_PATTERN = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    private static volatile AttachmentStore instance;
+
+    private final File directory;
+
+    public static AttachmentStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (AttachmentStore.class) {
+                if (instance == null) {
+                    instance = new AttachmentStore(new File(context.getApplicationContext().getFilesDir(), DIRECTORY));
+                }
+            }
+        }
+        return instance;
+    }
+
+    AttachmentStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Encrypts everything read from plain into a new attachment. The stream is not closed.
+     * @return The new attachment's id.
+     */
+    public String put(InputStream plain, SecretKey key) throws IOException, GeneralSecurityException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+        String attachmentId = UUID.randomUUID().toString();
+        // Written under a temporary name so a half-written attachment is never visible
+        File partial = new File(directory, attachmentId + PARTIAL_SUFFIX);
+        try (FileChannel out = new FileOutputStream(partial).getChannel()) {
+            AttachmentCipher.encrypt(key, AttachmentCipher.DEFAULT_CHUNK_SIZE, Channels.newChannel(plain), out);
+        } catch (IOException | GeneralSecurityException e) {
+            partial.delete();
+            throw e;
+        }
+        if (!partial.renameTo(fileFor(attachmentId))) {
+            partial.delete();
+            throw new IOException("Could not store attachment " + attachmentId);
+        }
+        return attachmentId;
+    }
+
+    /**
+     * Decrypts an attachment into plain. The stream is not closed.
+     * @return The number of plaintext bytes written.
+     * @throws GeneralSecurityException If the attachment fails authentication. Anything
+     *         already written to plain must be discarded.
+     */
+    public long get(String attachmentId, SecretKey key, OutputStream plain) throws IOException, GeneralSecurityException {
+        try (FileChannel in = new FileInputStream(fileFor(attachmentId)).getChannel()) {
+            return AttachmentCipher.decrypt(key, in, Channels.newChannel(plain));
+        }
+    }
+
+    /**
+     * @return The encrypted size of the attachment on disk, or 0 if it does not exist.
+     */
+    public long getEncryptedSize(String attachmentId) {
+        return fileFor(attachmentId).length();
+    }
+
+    public boolean delete(String attachmentId) {
+        return fileFor(attachmentId).delete();
+    }
+
+    private File fileFor(String attachmentId) {
+        if (attachmentId == null || !ID_PATTERN.matcher(attachmentId).matches()) {
+            throw new IllegalArgumentException("Invalid attachment id: " + attachmentId);
+        }
+        return new File(directory, attachmentId);
+    }
+}
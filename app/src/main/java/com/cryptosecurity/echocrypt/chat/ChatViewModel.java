@@ -0,0 +1,245 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import androidx.annotation.MainThread;
+import androidx.lifecycle.ViewModel;
+
+import com.cryptosecurity.echocrypt.models.Group;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.crypto.SecretKey;
+
+/**
+ * The state of one chat screen that must survive configuration changes: the decrypted
+ * timeline, the session key or group session, the sync engine with its snapshot listener and
+ * the decryption pipeline, and the read receipts of the other participants.
+ *
+ * A rotation or theme change gives the new ChatActivity this same instance, so it re-attaches
+ * its adapter to the existing timeline at no cost in Firestore reads or decrypts. Everything is
+ * released in onCleared() once the chat is really closed. The activity attaches itself through
+ * setTimelineObserver() and setGroupListener() and must detach in onDestroy(), so the
+ * ViewModel never holds on to a destroyed activity.
+ *
+ * Call from the main thread unless noted.
+ */
+public class ChatViewModel extends ViewModel {
+
+    private final MessageTimeline<MessageRenderModel> timeline = new MessageTimeline<>(MessageRenderModel::getTimestamp);
+    private MessageRenderer renderer;
+    private DecryptionPipeline pipeline;
+    private MessageSyncEngine syncEngine;
+    private GroupSession groupSession; // null in 1:1 chats
+    private Group readyGroup; // the group as of the last GroupSession.Listener.onReady()
+    private volatile SecretKey sharedSecret; // read by the sync callback on the sync executor
+    private Runnable timelineObserver;
+    private GroupSession.Listener groupListener;
+    private boolean syncPaused; // the chat is in the background
+    private String currentUserId;
+    private ReadReceiptWatcher readReceiptWatcher;
+    private ReadReceiptWatcher.Listener readReceiptListener;
+    private long readUpTo;
+
+    /**
+     * Sets up the renderer and pipeline the first time a chat screen uses this ViewModel; a no-op
+     * when the state was retained across a configuration change.
+     */
+    @MainThread
+    public void init(String currentUserId) {
+        if (renderer != null) return;
+        this.currentUserId = currentUserId;
+        renderer = new MessageRenderer(currentUserId);
+        pipeline = new DecryptionPipeline(renderer, this::onMessagesDecrypted);
+    }
+
+    public MessageTimeline<MessageRenderModel> getTimeline() {
+        return timeline;
+    }
+
+    public MessageRenderer getRenderer() {
+        return renderer;
+    }
+
+    /**
+     * @param observer Runs after every batch of changes reaches the timeline; null to detach.
+     */
+    public void setTimelineObserver(Runnable observer) {
+        timelineObserver = observer;
+    }
+
+    public SecretKey getSharedSecret() {
+        return sharedSecret;
+    }
+
+    public void setSharedSecret(SecretKey secret) {
+        sharedSecret = secret;
+    }
+
+    public GroupSession getGroupSession() {
+        return groupSession;
+    }
+
+    /**
+     * Opens the group session once; later calls only re-attach the listener, which is told
+     * straight away if the session is already ready.
+     */
+    public void openGroup(FirebaseFirestore db, String groupId, String currentUserId, GroupSession.Listener listener) {
+        groupListener = listener;
+        if (groupSession == null) {
+            groupSession = new GroupSession(db, groupId, currentUserId, new GroupSession.Listener() {
+                @Override
+                public void onReady(Group group) {
+                    readyGroup = group;
+                    if (readReceiptWatcher != null) {
+                        readReceiptWatcher.setReaders(othersIn(group));
+                    }
+                    if (groupListener != null) groupListener.onReady(group);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    if (groupListener != null) groupListener.onError(e);
+                }
+            });
+            groupSession.open();
+        } else if (readyGroup != null && listener != null) {
+            listener.onReady(readyGroup);
+        }
+    }
+
+    public void setGroupListener(GroupSession.Listener listener) {
+        groupListener = listener;
+    }
+
+    /**
+     * Follows the chat's read receipts once; later calls are ignored. In a group chat the
+     * readers are updated from the group whenever the session becomes ready.
+     * @param readers The other participants, or an empty list if not known yet.
+     */
+    public void watchReadReceipts(FirebaseFirestore db, String chatRoomId, Collection<String> readers) {
+        if (readReceiptWatcher != null) return;
+        readReceiptWatcher = new ReadReceiptWatcher(db, chatRoomId, readyGroup != null ? othersIn(readyGroup) : readers);
+        if (!syncPaused) {
+            readReceiptWatcher.start(this::onReadUpTo);
+        }
+    }
+
+    /**
+     * @param listener Told on the main thread when the read-up-to timestamp moves; null to detach.
+     */
+    public void setReadReceiptListener(ReadReceiptWatcher.Listener listener) {
+        readReceiptListener = listener;
+    }
+
+    /**
+     * @return The latest timestamp up to which everyone else has read the chat, or 0.
+     */
+    public long getReadUpTo() {
+        return readUpTo;
+    }
+
+    private void onReadUpTo(long timestamp) {
+        readUpTo = timestamp;
+        if (readReceiptListener != null) {
+            readReceiptListener.onReadUpTo(timestamp);
+        }
+    }
+
+    private List<String> othersIn(Group group) {
+        List<String> others = new ArrayList<>(group.getMemberIds());
+        others.remove(currentUserId);
+        return others;
+    }
+
+    public MessageSyncEngine getSyncEngine() {
+        return syncEngine;
+    }
+
+    public boolean isSyncing() {
+        return syncEngine != null;
+    }
+
+    /**
+     * Starts streaming the chat into the timeline. Ignored if it is already running.
+     */
+    public void startSync(String chatRoomId, MessageStore store, RemoteMessageSource remote, Executor executor) {
+        if (syncEngine != null) return;
+        syncEngine = new MessageSyncEngine(chatRoomId, store, remote, executor,
+                // Decryption happens off the main thread; see onMessagesDecrypted()
+                (upserts, removedIds) -> {
+                    if (groupSession != null) {
+                        pipeline.submit(chatRoomId, upserts, removedIds, groupSession::keyFor);
+                    } else {
+                        pipeline.submit(chatRoomId, upserts, removedIds, sharedSecret);
+                    }
+                });
+        if (syncPaused) {
+            syncEngine.pause(); // the session became ready while the chat was in the background
+        }
+        syncEngine.start();
+    }
+
+    /**
+     * Detaches the live listeners while the chat is not visible, so they cost no reads.
+     */
+    public void pauseSync() {
+        syncPaused = true;
+        if (syncEngine != null) {
+            syncEngine.pause();
+        }
+        if (readReceiptWatcher != null) {
+            readReceiptWatcher.stop();
+        }
+    }
+
+    /**
+     * Reattaches the live listeners, the message stream from the last synced timestamp.
+     */
+    public void resumeSync() {
+        syncPaused = false;
+        if (syncEngine != null) {
+            syncEngine.resume();
+        }
+        if (readReceiptWatcher != null) {
+            readReceiptWatcher.start(this::onReadUpTo);
+        }
+    }
+
+    private void onMessagesDecrypted(List<DecryptionPipeline.Update> updates) {
+        for (DecryptionPipeline.Update update : updates) {
+            if (update.isRemoval()) {
+                timeline.removeById(update.docId);
+            } else {
+                // An update for a known id usually means the server added the timestamp to our
+                // optimistically sent message; the timeline moves it into place.
+                timeline.upsert(update.docId, update.model);
+            }
+        }
+        if (timelineObserver != null) {
+            timelineObserver.run();
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        if (syncEngine != null) {
+            syncEngine.stop();
+        }
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+        if (groupSession != null) {
+            groupSession.close();
+        }
+        if (readReceiptWatcher != null) {
+            readReceiptWatcher.stop();
+        }
+        readReceiptListener = null;
+        timeline.setListener(null);
+        timelineObserver = null;
+        groupListener = null;
+    }
+}
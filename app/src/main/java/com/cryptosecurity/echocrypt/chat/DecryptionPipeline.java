@@ -0,0 +1,216 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import com.cryptosecurity.echocrypt.crypto.BulkDecryptor;
+import com.cryptosecurity.echocrypt.crypto.EncryptionHelper;
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.google.firebase.firestore.Blob;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Stage between message sync and the chat UI.
+ *
+ * Encrypted messages are decrypted on a single background worker, which keeps them in the
+ * order they were submitted, turned into render models there, and handed back to the main
+ * thread in batches so a long backlog never blocks a frame. Call shutdown() when the owning
+ * activity is destroyed.
+ *
+ * A long backlog, e.g. the whole history after a reinstall, is decrypted and rendered in
+ * chunks of CHUNK_SIZE spread over BulkDecryptor's work-stealing pool with one thread per core.
+ * The first BATCH_SIZE messages are done on their own first so the screen fills quickly, and
+ * results always come back in submission order.
+ *
+ * LocalEchoCache is checked first, so messages this device sent or already decrypted, e.g.
+ * when a chat is reopened, are never decrypted again.
+ */
+public class DecryptionPipeline {
+
+    private static final int BATCH_SIZE = 50;
+    private static final int CHUNK_SIZE = 1024;
+    // Shared by every pipeline; idle workers exit on their own
+    private static final BulkDecryptor BULK_DECRYPTOR = new BulkDecryptor(createPool());
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the next batch of decrypted changes, in submission order.
+         */
+        void onMessagesDecrypted(List<Update> updates);
+    }
+
+    /**
+     * Picks the key for each message. A 1:1 chat has one session key; a group chat has one
+     * sender key per member and epoch.
+     */
+    public interface KeySource {
+        /**
+         * Called on the worker thread, which may block.
+         * @return The key to open the message with, or null if none is available.
+         */
+        SecretKey keyFor(ChatMessage message);
+    }
+
+    /**
+     * A single decrypted, render-ready message, or the removal of one.
+     */
+    public static class Update {
+        public final String docId;
+        public final MessageRenderModel model; // null when the message was removed
+
+        public Update(String docId, MessageRenderModel model) {
+            this.docId = docId;
+            this.model = model;
+        }
+
+        public boolean isRemoval() {
+            return model == null;
+        }
+    }
+
+    private final MessageRenderer renderer;
+    private final LocalEchoCache localEchoCache = LocalEchoCache.getInstance();
+    private final Callback callback;
+    private final Handler mainHandler;
+    private final ThreadPoolExecutor executor;
+    private volatile boolean cancelled;
+
+    public DecryptionPipeline(MessageRenderer renderer, Callback callback) {
+        this.renderer = renderer;
+        this.callback = callback;
+        this.mainHandler = new Handler(Looper.getMainLooper());
+        // One worker keeps the output in submission order. The queue is unbounded on purpose:
+        // each task is one snapshot's changes, which can be neither dropped nor rejected
+        this.executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(() -> {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }, "DecryptionPipeline");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues messages for decryption. Safe to call from any thread.
+     * @param chatRoomId The chat the messages belong to.
+     * @param upserts Encrypted messages, in delivery order. Decrypted in place.
+     * @param removedIds Ids of messages to remove, delivered after the upserts.
+     * @param secretKey The session key for this conversation.
+     */
+    public void submit(String chatRoomId, List<ChatMessage> upserts, List<String> removedIds,
+                       SecretKey secretKey) {
+        submit(chatRoomId, upserts, removedIds, message -> secretKey);
+    }
+
+    /**
+     * Like submit(String, List, List, SecretKey), but looks up the key for each message.
+     */
+    public void submit(String chatRoomId, List<ChatMessage> upserts, List<String> removedIds,
+                       KeySource keys) {
+        if (cancelled || (upserts.isEmpty() && removedIds.isEmpty())) return;
+        executor.execute(() -> decryptAll(chatRoomId, upserts, removedIds, keys));
+    }
+
+    /**
+     * Cancels queued work and drops any batches not yet delivered to the main thread.
+     */
+    public void shutdown() {
+        cancelled = true;
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    private void decryptAll(String chatRoomId, List<ChatMessage> upserts, List<String> removedIds,
+                            KeySource keys) {
+        int total = upserts.size() + removedIds.size();
+        List<Update> batch = new ArrayList<>(Math.min(BATCH_SIZE, total));
+        int from = 0;
+        while (from < upserts.size()) {
+            int to = Math.min(upserts.size(), from == 0 ? BATCH_SIZE : from + CHUNK_SIZE);
+            // Small chunks run right here; large ones are split across cores, results in order
+            List<Update> decrypted = BULK_DECRYPTOR.map(upserts.subList(from, to),
+                    message -> cancelled ? null : decryptAndRender(chatRoomId, message, keys));
+            if (cancelled || Thread.currentThread().isInterrupted()) return;
+            for (Update update : decrypted) {
+                batch.add(update);
+                if (batch.size() == BATCH_SIZE) {
+                    deliver(batch);
+                    batch = new ArrayList<>(BATCH_SIZE);
+                }
+            }
+            from = to;
+        }
+        for (String docId : removedIds) {
+            batch.add(new Update(docId, null));
+        }
+        if (!batch.isEmpty()) {
+            deliver(batch);
+        }
+    }
+
+    // Runs on the worker or on a pool thread
+    private Update decryptAndRender(String chatRoomId, ChatMessage message, KeySource keys) {
+        Blob payload = message.getPayload();
+        byte[] envelope = payload != null ? payload.toBytes() : null;
+        // Our own echoes and messages decrypted before in this chat, e.g. when it is reopened
+        String known = envelope == null ? null
+                : localEchoCache.get(chatRoomId, message.getId(), message.getSenderId(), envelope);
+        if (known != null) {
+            message.setMessage(known);
+            message.setPayload(null);
+            return new Update(message.getId(), renderer.render(message));
+        }
+        SecretKey secretKey = keys.keyFor(message);
+        if (secretKey == null) {
+            message.setMessage(EncryptionHelper.DECRYPTION_ERROR);
+            message.setPayload(null);
+        } else if (envelope != null) {
+            String plainText = EncryptionHelper.decryptEnvelope(envelope, secretKey);
+            if (!EncryptionHelper.DECRYPTION_ERROR.equals(plainText)) {
+                localEchoCache.put(chatRoomId, message.getId(), message.getSenderId(),
+                        envelope, plainText);
+            }
+            message.setMessage(plainText);
+            message.setPayload(null);
+        } else {
+            // Base64 text from before the binary envelope format
+            message.setMessage(EncryptionHelper.decrypt(message.getMessage(), secretKey));
+        }
+        return new Update(message.getId(), renderer.render(message));
+    }
+
+    private void deliver(List<Update> batch) {
+        mainHandler.post(() -> {
+            if (!cancelled) {
+                callback.onMessagesDecrypted(batch);
+            }
+        });
+    }
+
+    private static ForkJoinPool createPool() {
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                }
+            };
+            thread.setName("BulkDecryptor-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+}
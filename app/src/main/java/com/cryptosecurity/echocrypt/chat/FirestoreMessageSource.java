@@ -0,0 +1,129 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.util.Log;
+
+import com.cryptosecurity.echocrypt.metrics.ListenerMetrics;
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * RemoteMessageSource backed by a chat room's Firestore messages collection.
+ *
+ * All callbacks, including document deserialization, run on the given executor rather than
+ * the main thread. Each live listener is tracked in ListenerMetrics, and its read count is
+ * logged when it detaches.
+ */
+public class FirestoreMessageSource implements RemoteMessageSource {
+
+    private static final String TAG = "FirestoreMessageSource";
+
+    private final CollectionReference messagesRef;
+    private final Executor executor;
+    private ListenerRegistration liveRegistration;
+    private ListenerMetrics.Registration liveMetrics;
+
+    public FirestoreMessageSource(CollectionReference messagesRef, Executor executor) {
+        this.messagesRef = messagesRef;
+        this.executor = executor;
+    }
+
+    @Override
+    public void listenNewest(int limit, Listener listener) {
+        stop();
+        ListenerMetrics.Registration metrics = openMetrics("newest=" + limit);
+        liveRegistration = messagesRef.orderBy("timestamp", Query.Direction.DESCENDING)
+                .limit(limit)
+                .addSnapshotListener(executor, (snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Live window listener failed", e);
+                        return;
+                    }
+                    if (snapshots != null) {
+                        metrics.recordSnapshot(billedReads(snapshots));
+                        deliver(snapshots, snapshots.size() >= limit, listener);
+                    }
+                });
+    }
+
+    @Override
+    public void listenSince(long sinceTimestamp, Listener listener) {
+        stop();
+        ListenerMetrics.Registration metrics = openMetrics("since=" + sinceTimestamp);
+        liveRegistration = messagesRef.whereGreaterThanOrEqualTo("timestamp", new Date(sinceTimestamp))
+                .orderBy("timestamp", Query.Direction.ASCENDING)
+                .addSnapshotListener(executor, (snapshots, e) -> {
+                    if (e != null) {
+                        Log.e(TAG, "Incremental sync listener failed", e);
+                        return;
+                    }
+                    if (snapshots != null) {
+                        metrics.recordSnapshot(billedReads(snapshots));
+                        deliver(snapshots, false, listener);
+                    }
+                });
+    }
+
+    @Override
+    public void fetchOlder(long beforeTimestamp, int limit, Listener listener) {
+        messagesRef.orderBy("timestamp", Query.Direction.DESCENDING)
+                .startAt(new Date(beforeTimestamp))
+                .limit(limit)
+                .get()
+                .addOnSuccessListener(executor, page -> deliver(page, false, listener))
+                .addOnFailureListener(executor, e -> {
+                    Log.e(TAG, "Failed to load older messages", e);
+                    listener.onRemoteChanges(new ArrayList<>(), new ArrayList<>());
+                });
+    }
+
+    @Override
+    public void stop() {
+        if (liveRegistration != null) {
+            liveRegistration.remove();
+            liveRegistration = null;
+        }
+        if (liveMetrics != null) {
+            ListenerMetrics.ListenerStats stats = liveMetrics.close();
+            liveMetrics = null;
+            Log.d(TAG, "Detached " + stats.format() + "; " + ListenerMetrics.snapshot().active.size() + " listeners still active");
+        }
+    }
+
+    private ListenerMetrics.Registration openMetrics(String window) {
+        liveMetrics = ListenerMetrics.open(messagesRef.getPath() + " " + window);
+        Log.d(TAG, "Attached " + messagesRef.getPath() + " " + window + "; " + ListenerMetrics.snapshot().active.size() + " listeners active");
+        return liveMetrics;
+    }
+
+    // The first snapshot is billed per document and later ones per changed document; snapshots
+    // served from the local cache are free.
+    private static int billedReads(QuerySnapshot snapshots) {
+        return snapshots.getMetadata().isFromCache() ? 0 : snapshots.getDocumentChanges().size();
+    }
+
+    // When a new message enters a full newest-N window, the oldest one leaves it as a REMOVED
+    // change. That message still exists, so removals from a full window are not forwarded.
+    // Messages are never deleted by the app, so every such REMOVED is an eviction.
+    private static void deliver(QuerySnapshot snapshots, boolean dropRemovals, Listener listener) {
+        List<DocumentChange> changes = snapshots.getDocumentChanges();
+        List<ChatMessage> upserts = new ArrayList<>(changes.size());
+        List<String> removedIds = new ArrayList<>();
+        for (DocumentChange dc : changes) {
+            if (dc.getType() == DocumentChange.Type.REMOVED) {
+                if (!dropRemovals) removedIds.add(dc.getDocument().getId());
+            } else {
+                upserts.add(dc.getDocument().toObject(ChatMessage.class));
+            }
+        }
+        listener.onRemoteChanges(upserts, removedIds);
+    }
+}
@@ -0,0 +1,93 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * RemoteMessageWriter that commits each group of messages as one Firestore WriteBatch.
+ *
+ * Messages are set() at their client-generated ids in chats/{room}/messages, so a retried batch
+ * never adds copies. A plain set() would still replace a message the server already has, and
+ * because the timestamp is a @ServerTimestamp that is null locally, the message would be
+ * stamped again and jump in every client's timeline. So when the outbox says a batch may
+ * already have arrived, it is committed in a transaction instead, which reads the documents
+ * first and only creates the missing ones. That costs one read per message, on retries only.
+ * Callbacks run on the given executor.
+ */
+public class FirestoreMessageWriter implements RemoteMessageWriter {
+
+    private static final String TAG = "FirestoreMessageWriter";
+
+    private final FirebaseFirestore db;
+    private final Executor executor;
+
+    public FirestoreMessageWriter(FirebaseFirestore db, Executor executor) {
+        this.db = db;
+        this.executor = executor;
+    }
+
+    @Override
+    public void commit(List<OutboxStore.Entry> entries, boolean mayExist, Callback callback) {
+        Task<Void> write = mayExist ? createMissing(entries) : setAll(entries);
+        write.addOnSuccessListener(executor, unused -> callback.onCommitted())
+                .addOnFailureListener(executor, e -> {
+                    boolean permanent = isPermanent(e, mayExist);
+                    Log.w(TAG, "Committing " + entries.size() + " messages failed"
+                            + (permanent ? " permanently" : ", will retry"), e);
+                    callback.onFailed(e, permanent);
+                });
+    }
+
+    private Task<Void> setAll(List<OutboxStore.Entry> entries) {
+        WriteBatch batch = db.batch();
+        for (OutboxStore.Entry entry : entries) {
+            batch.set(documentOf(entry), entry.message);
+        }
+        return batch.commit();
+    }
+
+    private Task<Void> createMissing(List<OutboxStore.Entry> entries) {
+        return db.runTransaction(transaction -> {
+            // A transaction must do all of its reads before its first write
+            List<OutboxStore.Entry> missing = new ArrayList<>(entries.size());
+            for (OutboxStore.Entry entry : entries) {
+                if (!transaction.get(documentOf(entry)).exists()) {
+                    missing.add(entry);
+                }
+            }
+            for (OutboxStore.Entry entry : missing) {
+                transaction.set(documentOf(entry), entry.message);
+            }
+            return null;
+        });
+    }
+
+    private DocumentReference documentOf(OutboxStore.Entry entry) {
+        return db.collection("chats").document(entry.chatRoomId)
+                .collection("messages").document(entry.message.getId());
+    }
+
+    private static boolean isPermanent(Exception e, boolean transaction) {
+        if (!(e instanceof FirebaseFirestoreException)) return false;
+        switch (((FirebaseFirestoreException) e).getCode()) {
+            case FAILED_PRECONDITION:
+                // Also how a transaction reports contention it gave up retrying
+                return !transaction;
+            case PERMISSION_DENIED:
+            case INVALID_ARGUMENT:
+            case OUT_OF_RANGE:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
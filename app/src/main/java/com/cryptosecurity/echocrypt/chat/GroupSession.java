@@ -0,0 +1,385 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.cryptosecurity.echocrypt.contacts.PublicKeyDirectory;
+import com.cryptosecurity.echocrypt.crypto.EncryptionHelper;
+import com.cryptosecurity.echocrypt.crypto.KeyManager;
+import com.cryptosecurity.echocrypt.crypto.MessageEnvelope;
+import com.cryptosecurity.echocrypt.crypto.SenderKey;
+import com.cryptosecurity.echocrypt.crypto.SenderKeyRing;
+import com.cryptosecurity.echocrypt.crypto.SessionKeyCache;
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.cryptosecurity.echocrypt.models.Group;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Sender-key encryption for one group chat.
+ *
+ * Firestore layout:
+ *   groups/{groupId}                                   Group: name, memberIds, createdBy
+ *   groups/{groupId}/senderKeys/{keyId}_{recipientId}  a SenderKey wrapped for one member
+ *   chats/{groupId}/messages                           messages, exactly as in 1:1 chats
+ *
+ * open() watches the group document. Each time it changes, the sender keys addressed to this
+ * user are loaded, including the user's own, which is how they survive a reinstall. If the
+ * user's own key was not distributed to exactly the current members, a new one is generated
+ * and wrapped for every member under the pairwise ECDH session key in one batched write, and
+ * only then used for sending. From there seal() costs one AES-GCM operation per message,
+ * whatever the size of the group.
+ *
+ * A message whose sender key has not been loaded yet makes keyFor() fetch the distributions
+ * again, at most once per KEY_REFRESH_INTERVAL_MS. A sender key is bound to its owner when it
+ * is unwrapped, so keyFor() refuses a message that names anyone else as its sender.
+ *
+ * Call open() and close() from the main thread.
+ */
+public class GroupSession {
+
+    private static final String TAG = "GroupSession";
+    private static final long TIMEOUT_MS = 15_000;
+    private static final long KEY_REFRESH_INTERVAL_MS = 5_000;
+    private static final int MAX_BATCH_WRITES = 500; // Firestore's limit per WriteBatch
+
+    public interface Listener {
+        /**
+         * Called on the main thread once the session can send, and again after every rotation.
+         */
+        void onReady(Group group);
+
+        /**
+         * Called on the main thread when the group cannot be loaded or the key not distributed.
+         */
+        void onError(Exception e);
+    }
+
+    private static SenderKeyRing sharedRing; // for the signed-in user, guarded by GroupSession.class
+
+    private final FirebaseFirestore db;
+    private final String groupId;
+    private final String currentUserId;
+    private final SenderKeyRing ring;
+    private final Listener listener;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private final PublicKeyDirectory publicKeyDirectory = PublicKeyDirectory.getInstance();
+    private final SessionKeyCache sessionKeyCache = SessionKeyCache.getInstance();
+    private volatile Set<String> members = Collections.emptySet();
+    private volatile boolean closed;
+    private ListenerRegistration groupRegistration;
+    private long lastKeyRefresh; // guarded by this
+
+    public GroupSession(FirebaseFirestore db, String groupId, String currentUserId, Listener listener) {
+        this.db = db;
+        this.groupId = groupId;
+        this.currentUserId = currentUserId;
+        this.ring = ringFor(currentUserId);
+        this.listener = listener;
+        // One worker: key distribution and rotation never race each other
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> new Thread(runnable, "GroupSession"));
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * @return The sender keys of the signed-in user, kept for the life of the process.
+     */
+    public static synchronized SenderKeyRing ringFor(String uid) {
+        if (sharedRing == null || !sharedRing.getOwnerId().equals(uid)) {
+            sharedRing = new SenderKeyRing(uid);
+        }
+        return sharedRing;
+    }
+
+    /**
+     * Forgets every sender key held in memory, e.g. on logout.
+     */
+    public static synchronized void clearKeys() {
+        if (sharedRing != null) {
+            sharedRing.clear();
+            sharedRing = null;
+        }
+    }
+
+    /**
+     * Creates a group with the creator as its first member.
+     * @return A task with the new group's document.
+     */
+    public static Task<DocumentReference> create(FirebaseFirestore db, String name, String creatorId,
+                                                 Collection<String> memberIds) {
+        Set<String> members = new LinkedHashSet<>();
+        members.add(creatorId);
+        members.addAll(memberIds);
+        return db.collection("groups").add(new Group(name, new ArrayList<>(members), creatorId));
+    }
+
+    /**
+     * Adds a member. Every member's session rotates its sender key before it next sends.
+     */
+    public static Task<Void> addMember(FirebaseFirestore db, String groupId, String uid) {
+        return db.collection("groups").document(groupId).update("memberIds", FieldValue.arrayUnion(uid));
+    }
+
+    /**
+     * Removes a member. Every remaining member's session rotates its sender key before it next
+     * sends, so nothing sent afterwards can be read by the removed member.
+     */
+    public static Task<Void> removeMember(FirebaseFirestore db, String groupId, String uid) {
+        return db.collection("groups").document(groupId).update("memberIds", FieldValue.arrayRemove(uid));
+    }
+
+    /**
+     * Starts watching the group and makes sure this user's sender key is distributed.
+     */
+    public void open() {
+        groupRegistration = db.collection("groups").document(groupId)
+                .addSnapshotListener(executor, (snapshot, e) -> {
+                    if (closed) return;
+                    if (e != null) {
+                        postError(e);
+                        return;
+                    }
+                    Group group = snapshot != null && snapshot.exists() ? snapshot.toObject(Group.class) : null;
+                    if (group == null || group.getMemberIds() == null
+                            || !group.getMemberIds().contains(currentUserId)) {
+                        members = Collections.emptySet(); // nothing more may be sent to the group
+                        postError(new IllegalStateException("Not a member of group " + groupId));
+                        return;
+                    }
+                    Set<String> current = new HashSet<>(group.getMemberIds());
+                    // Published first, so seal() refuses the old key while it is being rotated
+                    members = current;
+                    try {
+                        refreshKeys();
+                        ensureSendingKey(current);
+                        mainHandler.post(() -> {
+                            if (!closed) listener.onReady(group);
+                        });
+                    } catch (Exception ex) {
+                        Log.e(TAG, "Could not set up sender key for " + groupId, ex);
+                        postError(ex);
+                    }
+                });
+    }
+
+    public void close() {
+        closed = true;
+        if (groupRegistration != null) {
+            groupRegistration.remove();
+        }
+        executor.shutdownNow();
+        mainHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * @return Whether seal() currently has a key distributed to the whole membership.
+     */
+    public boolean isReady() {
+        return ring.sendingKey(groupId, members) != null;
+    }
+
+    /**
+     * Encrypts a message once for the whole group.
+     * @return The envelope, or null while the key is being rotated or encryption failed.
+     */
+    public byte[] seal(String plainText) {
+        SenderKey senderKey = ring.sendingKey(groupId, members);
+        return senderKey != null ? EncryptionHelper.encryptToEnvelope(plainText, senderKey.key) : null;
+    }
+
+    /**
+     * Finds the sender key a group message was sealed with. For DecryptionPipeline.
+     * @return The key, or null if the message is malformed, its key was never given to this
+     *         user, or the key belongs to another member than the message's sender.
+     */
+    @WorkerThread
+    public SecretKey keyFor(ChatMessage message) {
+        Blob payload = message.getPayload();
+        if (payload == null) return null; // group messages are always envelopes
+        byte[] envelope = payload.toBytes();
+        try {
+            SenderKey senderKey = ring.find(groupId, envelope);
+            if (senderKey == null && claimKeyRefresh()) {
+                // The distribution is written before the first message under a new key
+                refreshKeys();
+                senderKey = ring.find(groupId, envelope);
+            }
+            if (senderKey == null) return null;
+            if (!senderKey.senderId.equals(message.getSenderId())) {
+                Log.w(TAG, "Message " + message.getId() + " claims sender " + message.getSenderId()
+                        + " but was sealed with the key of " + senderKey.senderId);
+                return null;
+            }
+            return senderKey.key;
+        } catch (Exception e) {
+            Log.w(TAG, "No sender key for message " + message.getId(), e);
+            return null;
+        }
+    }
+
+    private synchronized boolean claimKeyRefresh() {
+        long now = System.currentTimeMillis();
+        if (now - lastKeyRefresh < KEY_REFRESH_INTERVAL_MS) return false;
+        lastKeyRefresh = now;
+        return true;
+    }
+
+    // Loads every sender key addressed to this user that the ring does not hold yet
+    @WorkerThread
+    private void refreshKeys() throws Exception {
+        QuerySnapshot snapshot = Tasks.await(senderKeys().whereEqualTo("recipientId", currentUserId).get(),
+                TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        Map<SenderKey, List<String>> ownRecipients = new HashMap<>();
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            String senderId = document.getString("senderId");
+            Long epoch = document.getLong("epoch");
+            Blob wrapped = document.getBlob("wrappedKey");
+            String keyId = document.getString("keyId");
+            if (senderId == null || epoch == null || wrapped == null || keyId == null) continue;
+            try {
+                if (ring.contains(fromHex(keyId))) continue;
+                SecretKey pairwiseKey = pairwiseKey(senderId);
+                if (pairwiseKey == null) continue;
+                SenderKey senderKey = SenderKey.unwrap(groupId, senderId, currentUserId, epoch.intValue(),
+                        pairwiseKey, wrapped.toBytes());
+                ring.add(senderKey);
+                if (senderId.equals(currentUserId)) {
+                    @SuppressWarnings("unchecked")
+                    List<String> recipients = (List<String>) document.get("memberIds");
+                    ownRecipients.put(senderKey, recipients);
+                }
+            } catch (Exception e) {
+                // Wrapped under a session key that has since changed, or tampered with
+                Log.w(TAG, "Could not unwrap sender key from " + senderId, e);
+            }
+        }
+        // Our own newest key, restored from Firestore, can be sent with if its recipients still match
+        SenderKey latest = ring.latestOwnKey(groupId);
+        List<String> recipients = latest != null ? ownRecipients.get(latest) : null;
+        if (recipients != null) {
+            ring.markDistributed(latest, recipients);
+        }
+    }
+
+    // Rotates and distributes this user's key unless it already reached exactly these members
+    @WorkerThread
+    private void ensureSendingKey(Set<String> current) throws Exception {
+        if (ring.sendingKey(groupId, current) != null) return;
+
+        SenderKey senderKey = ring.rotate(groupId);
+        String keyId = toHex(senderKey.getKeyId());
+        List<String> recipients = new ArrayList<>(current);
+        WriteBatch batch = db.batch();
+        int writes = 0;
+        for (String memberId : recipients) {
+            SecretKey pairwiseKey = pairwiseKey(memberId);
+            if (pairwiseKey == null) {
+                // No usable public key: this member cannot read until they register one
+                Log.w(TAG, "Skipping sender key for " + memberId + " without a public key");
+                continue;
+            }
+            Map<String, Object> distribution = new HashMap<>();
+            distribution.put("senderId", currentUserId);
+            distribution.put("recipientId", memberId);
+            distribution.put("epoch", senderKey.epoch);
+            distribution.put("keyId", keyId);
+            distribution.put("wrappedKey", Blob.fromBytes(senderKey.wrapFor(memberId, pairwiseKey)));
+            distribution.put("createdAt", FieldValue.serverTimestamp());
+            if (memberId.equals(currentUserId)) {
+                // Lets this user's other installs know who already has the key
+                distribution.put("memberIds", recipients);
+            }
+            batch.set(senderKeys().document(keyId + "_" + memberId), distribution);
+            if (++writes == MAX_BATCH_WRITES) {
+                Tasks.await(batch.commit(), TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                batch = db.batch();
+                writes = 0;
+            }
+        }
+        if (writes > 0) {
+            Tasks.await(batch.commit(), TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        }
+        ring.markDistributed(senderKey, recipients);
+        Log.d(TAG, "Distributed sender key epoch " + senderKey.epoch + " to " + recipients.size() + " members");
+    }
+
+    // The 1:1 ECDH session key with a member, from SessionKeyCache when possible
+    @WorkerThread
+    private SecretKey pairwiseKey(String uid) throws Exception {
+        PublicKeyDirectory.Entry entry = publicKeyDirectory.fetch(uid, TIMEOUT_MS);
+        if (entry == null) return null;
+        SecretKey secret = sessionKeyCache.get(uid, entry.publicKeyString);
+        if (secret != null) return secret;
+
+        PrivateKey myPrivateKey = KeyManager.getInstance().getPrivateKey();
+        if (myPrivateKey == null) {
+            throw new IllegalStateException("Private key unavailable");
+        }
+        secret = EncryptionHelper.generateSharedSecret(myPrivateKey, entry.publicKey);
+        if (secret != null) {
+            sessionKeyCache.put(uid, entry.publicKeyString, secret);
+        }
+        return secret;
+    }
+
+    private CollectionReference senderKeys() {
+        return db.collection("groups").document(groupId).collection("senderKeys");
+    }
+
+    private void postError(Exception e) {
+        mainHandler.post(() -> {
+            if (!closed) listener.onError(e);
+        });
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static byte[] fromHex(String hex) {
+        if (hex.length() != 2 * MessageEnvelope.KEY_ID_LENGTH) {
+            throw new IllegalArgumentException("Malformed key id " + hex);
+        }
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,193 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.content.Context;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends encrypted messages through a durable local queue.
+ *
+ * A message gets a client-generated document id and is written to the OutboxStore before any
+ * network work happens. A single sender drains the queue oldest first: messages queued within
+ * LINGER_MS of each other, or while a commit is in flight, go out together in one batch of up
+ * to MAX_BATCH_SIZE. Failed commits are retried with capped exponential backoff and jitter, and
+ * because every message has a fixed id a retry never creates a duplicate. A message that may
+ * already have reached the server, because an earlier commit failed ambiguously or it is left
+ * over from a previous run, is committed with mayExist set, so a retry never re-stamps it.
+ * A batch rejected permanently is retried one message at a time, so only the offending message
+ * is dropped and reported to the listeners.
+ *
+ * All state lives on one scheduler thread, so the outbox needs no locking.
+ */
+public class MessageOutbox {
+
+    public static final int MAX_BATCH_SIZE = 100; // Firestore allows up to 500 writes per batch
+    static final long LINGER_MS = 25;
+    static final long INITIAL_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = 5 * 60_000;
+
+    public interface Listener {
+        /**
+         * Called on the outbox thread when a message was rejected and will not be retried.
+         */
+        void onSendFailed(String chatRoomId, String docId, Exception e);
+    }
+
+    /**
+     * Runs tasks in order on a single thread, optionally after a delay.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private static volatile MessageOutbox instance;
+
+    private final OutboxStore store;
+    private final RemoteMessageWriter writer;
+    private final Scheduler scheduler;
+    private final Random random = new Random();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    // Only touched on the scheduler thread
+    private boolean drainScheduled;
+    private boolean inFlight;
+    private boolean isolating; // a batch was rejected; send one message at a time until the queue empties
+    private int failures;
+    private final Set<String> neverCommitted = new HashSet<>(); // ids sent in this process, not tried yet
+
+    /**
+     * @return The process-wide outbox. Messages left over from a previous run start sending
+     *         as soon as it is created.
+     */
+    public static MessageOutbox getInstance(Context context) {
+        if (instance == null) {
+            synchronized (MessageOutbox.class) {
+                if (instance == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                            runnable -> new Thread(runnable, "MessageOutbox"));
+                    instance = new MessageOutbox(new SqliteOutboxStore(context),
+                            new FirestoreMessageWriter(FirebaseFirestore.getInstance(), executor),
+                            (task, delayMs) -> executor.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+                    instance.resume();
+                }
+            }
+        }
+        return instance;
+    }
+
+    MessageOutbox(OutboxStore store, RemoteMessageWriter writer, Scheduler scheduler) {
+        this.store = store;
+        this.writer = writer;
+        this.scheduler = scheduler;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Queues an encrypted message for sending. Safe to call from any thread.
+     * @return The message's document id, assigned here if the message did not have one.
+     */
+    public String send(String chatRoomId, ChatMessage message) {
+        if (message.getId() == null) {
+            message.setId(UUID.randomUUID().toString());
+        }
+        scheduler.schedule(() -> {
+            store.enqueue(chatRoomId, message);
+            neverCommitted.add(message.getId());
+            scheduleDrain(LINGER_MS);
+        }, 0);
+        return message.getId();
+    }
+
+    /**
+     * Sends whatever is queued right away, skipping any pending backoff, e.g. when the
+     * app comes back to the foreground.
+     */
+    public void resume() {
+        scheduler.schedule(() -> {
+            failures = 0;
+            drainScheduled = false; // a drain still waiting out its backoff finds nothing left, or goes again
+            scheduleDrain(0);
+        }, 0);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        if (drainScheduled || inFlight) return;
+        drainScheduled = true;
+        scheduler.schedule(this::drain, delayMs);
+    }
+
+    private void drain() {
+        drainScheduled = false;
+        if (inFlight) return;
+        List<OutboxStore.Entry> batch = store.peek(isolating ? 1 : MAX_BATCH_SIZE);
+        if (batch.isEmpty()) {
+            isolating = false;
+            return;
+        }
+        inFlight = true;
+        List<String> ids = docIds(batch);
+        boolean mayExist = !neverCommitted.containsAll(ids);
+        neverCommitted.removeAll(ids);
+        writer.commit(batch, mayExist, new RemoteMessageWriter.Callback() {
+            @Override
+            public void onCommitted() {
+                inFlight = false;
+                failures = 0;
+                store.remove(ids);
+                scheduleDrain(0);
+            }
+
+            @Override
+            public void onFailed(Exception e, boolean permanent) {
+                inFlight = false;
+                if (!permanent) {
+                    failures++;
+                    scheduleDrain(backoffMs(failures));
+                } else if (batch.size() > 1) {
+                    // Find the rejected message by retrying the batch one message at a time
+                    isolating = true;
+                    scheduleDrain(0);
+                } else {
+                    OutboxStore.Entry rejected = batch.get(0);
+                    store.remove(ids);
+                    for (Listener listener : listeners) {
+                        listener.onSendFailed(rejected.chatRoomId, rejected.message.getId(), e);
+                    }
+                    scheduleDrain(0);
+                }
+            }
+        });
+    }
+
+    // Jittered within the upper half of the window, so clients that failed together do not retry together
+    long backoffMs(int failures) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, INITIAL_BACKOFF_MS << Math.min(failures - 1, 20));
+        return ceiling / 2 + (long) (random.nextDouble() * (ceiling / 2));
+    }
+
+    private static List<String> docIds(List<OutboxStore.Entry> entries) {
+        List<String> ids = new ArrayList<>(entries.size());
+        for (OutboxStore.Entry entry : entries) {
+            ids.add(entry.message.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,66 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.Date;
+
+/**
+ * Immutable, render-ready form of a decrypted message.
+ *
+ * Everything ChatAdapter shows is computed up front by MessageRenderer, off the main thread,
+ * so binding a row only copies these fields into views.
+ */
+public final class MessageRenderModel {
+
+    public static final int STATUS_NONE = 0; // received messages carry no status icon
+    public static final int STATUS_PENDING = 1; // waiting for the server timestamp
+    public static final int STATUS_SENT = 2;
+    public static final int STATUS_READ = 3; // never stored; see statusAt()
+
+    public final String docId;
+    public final long stableId;
+    public final ChatMessage message;
+    public final boolean outgoing;
+    public final CharSequence text; // PrecomputedText where the platform supports it
+    public final String timeText;
+    public final int status;
+
+    MessageRenderModel(String docId, ChatMessage message, boolean outgoing, CharSequence text,
+                       String timeText, int status) {
+        this.docId = docId;
+        this.stableId = stableIdOf(docId);
+        this.message = message;
+        this.outgoing = outgoing;
+        this.text = text;
+        this.timeText = timeText;
+        this.status = status;
+    }
+
+    public Date getTimestamp() {
+        return message.getTimestamp();
+    }
+
+    /**
+     * @param readUpTo The timestamp up to which everyone else has read the chat.
+     * @return The status to show: a sent message at or before readUpTo shows as read.
+     */
+    public int statusAt(long readUpTo) {
+        if (status == STATUS_SENT && message.getTimestamp() != null && message.getTimestamp().getTime() <= readUpTo) {
+            return STATUS_READ;
+        }
+        return status;
+    }
+
+    /**
+     * @return A RecyclerView item id derived from a document id (64-bit FNV-1a), so the same
+     *         message keeps its id across updates and moves.
+     */
+    public static long stableIdOf(String docId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < docId.length(); i++) {
+            hash ^= docId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
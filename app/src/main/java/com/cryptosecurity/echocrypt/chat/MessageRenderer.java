@@ -0,0 +1,110 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.os.Build;
+import android.text.PrecomputedText;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.WorkerThread;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Turns decrypted messages into MessageRenderModels on a background thread.
+ *
+ * Time strings are formatted once per message with a shared thread-safe formatter, and
+ * consecutive messages from the same minute reuse the previous string. That cache is kept per
+ * thread, so the pool threads rendering a long backlog in parallel never wait on each other.
+ * Once ChatAdapter has reported the text metrics of its message views, the message text is
+ * laid out ahead of time as PrecomputedText (API 28+), so the main thread only has to draw it.
+ */
+public class MessageRenderer {
+
+    private static final long MINUTE_MS = 60_000;
+
+    private final String currentUserId;
+    private final DateTimeFormatter timeFormat =
+            DateTimeFormatter.ofPattern("h:mm a", Locale.getDefault());
+    private final ZoneId zone = ZoneId.systemDefault();
+    private volatile PrecomputedText.Params sentTextParams;
+    private volatile PrecomputedText.Params receivedTextParams;
+    private final ThreadLocal<LastTime> lastTime = ThreadLocal.withInitial(LastTime::new);
+
+    private static final class LastTime {
+        long minute = Long.MIN_VALUE;
+        String text;
+    }
+
+    public MessageRenderer(String currentUserId) {
+        this.currentUserId = currentUserId;
+    }
+
+    /**
+     * Supplies the text metrics of the message view for one bubble type. Messages rendered
+     * from then on carry precomputed text matching that view.
+     */
+    public void setTextMetrics(boolean outgoing, PrecomputedText.Params params) {
+        if (outgoing) {
+            sentTextParams = params;
+        } else {
+            receivedTextParams = params;
+        }
+    }
+
+    /**
+     * @param message A decrypted message with its document id set.
+     */
+    @WorkerThread
+    public MessageRenderModel render(ChatMessage message) {
+        return render(message, true);
+    }
+
+    /**
+     * Renders a message we are sending right now, so it shows before the network round-trip.
+     * Its text is not precomputed; a single short bubble is cheap to lay out on bind.
+     */
+    @MainThread
+    public MessageRenderModel renderLocalEcho(ChatMessage message) {
+        return render(message, false);
+    }
+
+    private MessageRenderModel render(ChatMessage message, boolean precompute) {
+        boolean outgoing = currentUserId.equals(message.getSenderId());
+        String text = message.getMessage() != null ? message.getMessage() : "";
+        Date timestamp = message.getTimestamp();
+
+        int status;
+        String timeText;
+        if (timestamp != null) {
+            timeText = formatTime(timestamp.getTime());
+            status = outgoing ? MessageRenderModel.STATUS_SENT : MessageRenderModel.STATUS_NONE;
+        } else {
+            // Optimistic local write that the server has not confirmed yet
+            timeText = outgoing ? "Sending..." : "";
+            status = outgoing ? MessageRenderModel.STATUS_PENDING : MessageRenderModel.STATUS_NONE;
+        }
+        return new MessageRenderModel(message.getId(), message, outgoing,
+                precompute ? layOut(text, outgoing) : text, timeText, status);
+    }
+
+    private CharSequence layOut(String text, boolean outgoing) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) return text;
+        PrecomputedText.Params params = outgoing ? sentTextParams : receivedTextParams;
+        return params != null ? PrecomputedText.create(text, params) : text;
+    }
+
+    private String formatTime(long millis) {
+        long minute = Math.floorDiv(millis, MINUTE_MS);
+        LastTime last = lastTime.get();
+        if (minute != last.minute) {
+            last.text = timeFormat.format(Instant.ofEpochMilli(millis).atZone(zone));
+            last.minute = minute;
+        }
+        return last.text;
+    }
+}
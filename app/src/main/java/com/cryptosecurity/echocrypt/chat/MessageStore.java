@@ -0,0 +1,53 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local, persistent copy of chat messages. Messages are stored exactly as they arrive from
+ * Firestore, so the message text is ciphertext at rest. Pending messages (no server timestamp
+ * yet) are kept too and sort after everything else.
+ *
+ * Implementations are not required to be thread-safe; MessageSyncEngine only touches the
+ * store from its own executor.
+ */
+public interface MessageStore {
+
+    /**
+     * @return Up to limit of the newest messages in the room, oldest first.
+     */
+    List<ChatMessage> loadNewest(String chatRoomId, int limit);
+
+    /**
+     * @return Up to limit timestamped messages older than beforeTimestamp, oldest first.
+     */
+    List<ChatMessage> loadOlder(String chatRoomId, long beforeTimestamp, int limit);
+
+    /**
+     * @return The stored messages with the given ids, keyed by id. Unknown ids are absent.
+     */
+    Map<String, ChatMessage> findByIds(String chatRoomId, Collection<String> docIds);
+
+    /**
+     * Inserts or replaces messages by document id.
+     */
+    void upsert(String chatRoomId, List<ChatMessage> messages);
+
+    void remove(String chatRoomId, Collection<String> docIds);
+
+    /**
+     * @return The newest server timestamp that has been synced for the room, or 0 if none.
+     */
+    long getWatermark(String chatRoomId);
+
+    void setWatermark(String chatRoomId, long watermark);
+
+    /**
+     * Deletes all but the newest keepNewest messages of the room.
+     * @return The number of messages deleted.
+     */
+    int compact(String chatRoomId, int keepNewest);
+}
@@ -0,0 +1,221 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+
+/**
+ * Keeps a chat room's local MessageStore in sync with the server and feeds the UI from it.
+ *
+ * On start the stored history renders straight from disk, then the server is asked only for
+ * messages at or after the synced watermark (or just the newest page on the very first open).
+ * Incoming messages are deduplicated by document id against the store, so only new or changed
+ * messages reach the callback and need decrypting. Older history is paged from the store
+ * first and from the server once the store runs out.
+ *
+ * While the chat is in the background the engine can be paused, which detaches the live
+ * stream. Resuming reattaches it from the watermark, so the server only sends what changed in
+ * the meantime instead of replaying the whole window.
+ *
+ * Every method hops onto the given executor, and the store and remote source are only used
+ * from there, so the engine needs no locking. Pass a direct executor in tests.
+ */
+public class MessageSyncEngine {
+
+    public static final int PAGE_SIZE = 50;
+    public static final int MAX_STORED_MESSAGES = 5000;
+
+    public interface Callback {
+        /**
+         * Called on the engine's executor with messages that are new or changed since the
+         * caller last saw them. Message text is still ciphertext.
+         */
+        void onMessages(List<ChatMessage> upserts, List<String> removedIds);
+    }
+
+    private final String chatRoomId;
+    private final MessageStore store;
+    private final RemoteMessageSource remote;
+    private final Executor executor;
+    private final Callback callback;
+
+    private long watermark;
+    private long oldestLoaded = Long.MAX_VALUE; // timestamp cursor for the next older page
+    private boolean loadingOlder;
+    private boolean hasMoreOlder = true;
+    private boolean started;
+    private boolean paused; // the live stream is detached until resume()
+
+    public MessageSyncEngine(String chatRoomId, MessageStore store, RemoteMessageSource remote,
+                             Executor executor, Callback callback) {
+        this.chatRoomId = chatRoomId;
+        this.store = store;
+        this.remote = remote;
+        this.executor = executor;
+        this.callback = callback;
+    }
+
+    /**
+     * Renders the stored history, then starts streaming server changes.
+     */
+    public void start() {
+        executor.execute(() -> {
+            if (started) return;
+            started = true;
+
+            List<ChatMessage> cached = store.loadNewest(chatRoomId, PAGE_SIZE);
+            trackOldest(cached);
+            if (!cached.isEmpty()) {
+                callback.onMessages(cached, new ArrayList<>());
+            }
+
+            watermark = store.getWatermark(chatRoomId);
+            if (!paused) {
+                listenRemote();
+            }
+        });
+    }
+
+    /**
+     * Detaches the live stream, e.g. while the chat is in the background. Paging and the
+     * rendered history are unaffected. Pausing before start() makes start() leave the stream
+     * detached.
+     */
+    public void pause() {
+        executor.execute(() -> {
+            if (paused) return;
+            paused = true;
+            if (started) {
+                remote.stop();
+            }
+        });
+    }
+
+    /**
+     * Reattaches the live stream from the watermark after pause().
+     */
+    public void resume() {
+        executor.execute(() -> {
+            if (!paused) return;
+            paused = false;
+            if (started) {
+                listenRemote();
+            }
+        });
+    }
+
+    /**
+     * Loads the next older page, from the store if it has one and from the server otherwise.
+     */
+    public void loadOlder() {
+        executor.execute(() -> {
+            if (!started || loadingOlder || !hasMoreOlder || oldestLoaded == Long.MAX_VALUE) return;
+
+            List<ChatMessage> page = store.loadOlder(chatRoomId, oldestLoaded, PAGE_SIZE);
+            if (!page.isEmpty()) {
+                trackOldest(page);
+                callback.onMessages(page, new ArrayList<>());
+                if (page.size() == PAGE_SIZE) return;
+            }
+
+            // The store is a contiguous suffix of the history, so once it runs short the rest is remote
+            // The cursor is inclusive so messages sharing the oldest timestamp are not skipped;
+            // ask for one extra to make up for the overlapping message.
+            loadingOlder = true;
+            long cursor = oldestLoaded;
+            remote.fetchOlder(cursor, PAGE_SIZE + 1, (upserts, removedIds) -> {
+                loadingOlder = false;
+                if (!started) return;
+                hasMoreOlder = upserts.size() == PAGE_SIZE + 1;
+                onRemoteChanges(upserts, removedIds);
+                if (oldestLoaded >= cursor) {
+                    // No progress: the page only contained messages we already had
+                    hasMoreOlder = false;
+                }
+            });
+        });
+    }
+
+    public boolean hasMoreOlder() {
+        return hasMoreOlder;
+    }
+
+    /**
+     * @return The newest synced server timestamp, or 0 before the first sync.
+     */
+    public long getWatermark() {
+        return watermark;
+    }
+
+    /**
+     * Stops streaming and trims the store down to MAX_STORED_MESSAGES.
+     */
+    public void stop() {
+        executor.execute(() -> {
+            if (!started) return;
+            started = false;
+            remote.stop();
+            store.compact(chatRoomId, MAX_STORED_MESSAGES);
+        });
+    }
+
+    // Inclusive, so a message sharing the watermark timestamp is read again and deduplicated
+    // rather than missed
+    private void listenRemote() {
+        if (watermark > 0) {
+            remote.listenSince(watermark, this::onRemoteChanges);
+        } else {
+            remote.listenNewest(PAGE_SIZE, this::onRemoteChanges);
+        }
+    }
+
+    private void onRemoteChanges(List<ChatMessage> upserts, List<String> removedIds) {
+        List<String> ids = new ArrayList<>(upserts.size());
+        for (ChatMessage message : upserts) {
+            ids.add(message.getId());
+        }
+        Map<String, ChatMessage> known = store.findByIds(chatRoomId, ids);
+
+        List<ChatMessage> changed = new ArrayList<>();
+        long newWatermark = watermark;
+        for (ChatMessage message : upserts) {
+            if (!isSame(known.get(message.getId()), message)) {
+                changed.add(message);
+            }
+            if (message.getTimestamp() != null) {
+                newWatermark = Math.max(newWatermark, message.getTimestamp().getTime());
+            }
+        }
+
+        if (!changed.isEmpty()) store.upsert(chatRoomId, changed);
+        if (!removedIds.isEmpty()) store.remove(chatRoomId, removedIds);
+        if (newWatermark != watermark) {
+            watermark = newWatermark;
+            store.setWatermark(chatRoomId, watermark);
+        }
+
+        trackOldest(upserts);
+        if (!changed.isEmpty() || !removedIds.isEmpty()) {
+            callback.onMessages(changed, removedIds);
+        }
+    }
+
+    private void trackOldest(List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            if (message.getTimestamp() != null) {
+                oldestLoaded = Math.min(oldestLoaded, message.getTimestamp().getTime());
+            }
+        }
+    }
+
+    private static boolean isSame(ChatMessage stored, ChatMessage incoming) {
+        return stored != null
+                && Objects.equals(stored.getMessage(), incoming.getMessage())
+                && Objects.equals(stored.getPayload(), incoming.getPayload())
+                && Objects.equals(stored.getTimestamp(), incoming.getTimestamp());
+    }
+}
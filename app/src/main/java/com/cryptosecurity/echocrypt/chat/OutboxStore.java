@@ -0,0 +1,46 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Durable queue of encrypted messages waiting to be written to Firestore.
+ * Each message already carries its client-generated document id, which is also its key here.
+ *
+ * Implementations are not required to be thread-safe; MessageOutbox only touches the store
+ * from its own thread.
+ */
+public interface OutboxStore {
+
+    /**
+     * A queued message and the chat room it belongs to.
+     */
+    class Entry {
+        public final String chatRoomId;
+        public final ChatMessage message;
+
+        public Entry(String chatRoomId, ChatMessage message) {
+            this.chatRoomId = chatRoomId;
+            this.message = message;
+        }
+    }
+
+    /**
+     * Appends a message. Enqueueing a document id that is already queued replaces it in place.
+     */
+    void enqueue(String chatRoomId, ChatMessage message);
+
+    /**
+     * @return Up to limit of the oldest queued messages, in the order they were enqueued.
+     */
+    List<Entry> peek(int limit);
+
+    /**
+     * Removes the queued messages with the given document ids.
+     */
+    void remove(Collection<String> docIds);
+
+    int size();
+}
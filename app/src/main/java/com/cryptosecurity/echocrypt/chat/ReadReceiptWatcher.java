@@ -0,0 +1,107 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.util.Log;
+
+import com.cryptosecurity.echocrypt.metrics.ListenerMetrics;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Follows the readUpTo map that ReadReceiptWriter maintains on chats/{chatRoomId} and reduces it
+ * to the one timestamp up to which every other participant has read the chat.
+ *
+ * The whole chat costs a single document listener, however many messages are on screen; the
+ * adapter resolves each row's tick from the reported value.
+ */
+public class ReadReceiptWatcher {
+
+    private static final String TAG = "ReadReceiptWatcher";
+
+    public interface Listener {
+        /**
+         * Called on the main thread whenever the value changes.
+         */
+        void onReadUpTo(long timestamp);
+    }
+
+    private final DocumentReference chatRef;
+    private final List<String> readers = new ArrayList<>();
+    private ListenerRegistration registration;
+    private ListenerMetrics.Registration metrics;
+    private Map<?, ?> lastReadUpTo;
+    private long lastReported = -1;
+    private Listener listener;
+
+    /**
+     * @param readers Everyone whose read receipt counts: the other participant of a 1:1 chat, or
+     *                the other members of a group.
+     */
+    public ReadReceiptWatcher(FirebaseFirestore db, String chatRoomId, Collection<String> readers) {
+        this.chatRef = db.collection("chats").document(chatRoomId);
+        this.readers.addAll(readers);
+    }
+
+    /**
+     * Replaces the readers, e.g. when group membership changes, and reports the new value.
+     */
+    public void setReaders(Collection<String> readers) {
+        this.readers.clear();
+        this.readers.addAll(readers);
+        report();
+    }
+
+    public void start(Listener listener) {
+        this.listener = listener;
+        if (registration != null) return;
+        metrics = ListenerMetrics.open(chatRef.getId() + " readUpTo");
+        registration = chatRef.addSnapshotListener((snapshot, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Read receipt listener failed", e);
+                return;
+            }
+            if (snapshot == null) return;
+            metrics.recordSnapshot(snapshot.getMetadata().isFromCache() ? 0 : 1);
+            lastReadUpTo = snapshot.get("readUpTo") instanceof Map ? (Map<?, ?>) snapshot.get("readUpTo") : null;
+            report();
+        });
+    }
+
+    public void stop() {
+        listener = null;
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+            metrics.close();
+            metrics = null;
+        }
+    }
+
+    private void report() {
+        long readUpTo = readByAll(lastReadUpTo, readers);
+        if (readUpTo != lastReported && listener != null) {
+            lastReported = readUpTo;
+            listener.onReadUpTo(readUpTo);
+        }
+    }
+
+    /**
+     * @return The oldest read-up-to timestamp among readers, or 0 if any of them has not read
+     *         the chat yet or there are no readers.
+     */
+    static long readByAll(Map<?, ?> readUpTo, Collection<String> readers) {
+        if (readUpTo == null || readers.isEmpty()) return 0;
+        long min = Long.MAX_VALUE;
+        for (String reader : readers) {
+            Object value = readUpTo.get(reader);
+            if (!(value instanceof Number)) return 0;
+            min = Math.min(min, ((Number) value).longValue());
+        }
+        return min;
+    }
+}
@@ -0,0 +1,128 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.SetOptions;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes how far the user has read each chat as one "read up to" timestamp per chat, in the
+ * readUpTo.{userId} field of chats/{chatRoomId}.
+ *
+ * markRead() only raises an in-memory high-water mark. The first mark after a write schedules
+ * the next write FLUSH_INTERVAL_MS later, and every mark in between rides along with it, so
+ * reading a whole backlog costs one write rather than one per message. flush() writes the
+ * pending mark right away, e.g. when the chat goes to the background. A mark never moves
+ * backwards, and one that is not newer than the last write is dropped.
+ *
+ * All state lives on one scheduler thread, so the writer needs no locking.
+ */
+public class ReadReceiptWriter {
+
+    static final long FLUSH_INTERVAL_MS = 2_000;
+    private static final String TAG = "ReadReceiptWriter";
+
+    public interface Remote {
+        /**
+         * Stores userId's read-up-to timestamp for the chat. Failures are the implementation's to handle.
+         */
+        void writeReadUpTo(String chatRoomId, String userId, long timestamp);
+    }
+
+    /**
+     * Runs tasks in order on a single thread, optionally after a delay.
+     */
+    interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+    }
+
+    private static final class Mark {
+        final String userId;
+        final long timestamp;
+
+        Mark(String userId, long timestamp) {
+            this.userId = userId;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static volatile ReadReceiptWriter instance;
+
+    private final Remote remote;
+    private final Scheduler scheduler;
+
+    // Only touched on the scheduler thread, keyed by chat room id
+    private final Map<String, Mark> pending = new HashMap<>();
+    private final Map<String, Mark> written = new HashMap<>();
+    private final Set<String> flushScheduled = new HashSet<>();
+
+    public static ReadReceiptWriter getInstance() {
+        if (instance == null) {
+            synchronized (ReadReceiptWriter.class) {
+                if (instance == null) {
+                    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+                            runnable -> new Thread(runnable, "ReadReceipts"));
+                    instance = new ReadReceiptWriter(firestoreRemote(FirebaseFirestore.getInstance()),
+                            (task, delayMs) -> executor.schedule(task, delayMs, TimeUnit.MILLISECONDS));
+                }
+            }
+        }
+        return instance;
+    }
+
+    ReadReceiptWriter(Remote remote, Scheduler scheduler) {
+        this.remote = remote;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Records that userId has seen every message of the chat up to timestamp. Safe to call from
+     * any thread, as often as the UI likes.
+     */
+    public void markRead(String chatRoomId, String userId, long timestamp) {
+        scheduler.schedule(() -> {
+            if (covers(pending.get(chatRoomId), userId, timestamp) || covers(written.get(chatRoomId), userId, timestamp)) return;
+            pending.put(chatRoomId, new Mark(userId, timestamp));
+            if (flushScheduled.add(chatRoomId)) {
+                scheduler.schedule(() -> {
+                    flushScheduled.remove(chatRoomId);
+                    write(chatRoomId);
+                }, FLUSH_INTERVAL_MS);
+            }
+        }, 0);
+    }
+
+    /**
+     * Writes the chat's pending mark now instead of waiting for the interval.
+     */
+    public void flush(String chatRoomId) {
+        scheduler.schedule(() -> write(chatRoomId), 0);
+    }
+
+    private void write(String chatRoomId) {
+        Mark mark = pending.remove(chatRoomId);
+        if (mark == null) return;
+        written.put(chatRoomId, mark);
+        remote.writeReadUpTo(chatRoomId, mark.userId, mark.timestamp);
+    }
+
+    private static boolean covers(Mark mark, String userId, long timestamp) {
+        return mark != null && mark.userId.equals(userId) && mark.timestamp >= timestamp;
+    }
+
+    // A merge touches only our own entry of the map. Offline writes are queued and retried by
+    // Firestore, and a lost write is superseded by the next newer mark.
+    private static Remote firestoreRemote(FirebaseFirestore db) {
+        return (chatRoomId, userId, timestamp) -> db.collection("chats").document(chatRoomId)
+                .set(Collections.singletonMap("readUpTo", Collections.singletonMap(userId, timestamp)), SetOptions.merge())
+                .addOnFailureListener(e -> Log.e(TAG, "Failed to write read receipt", e));
+    }
+}
@@ -0,0 +1,43 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.List;
+
+/**
+ * The server-side messages collection of one chat room, as seen by MessageSyncEngine.
+ * Messages carry their document id and still hold ciphertext.
+ */
+public interface RemoteMessageSource {
+
+    interface Listener {
+        /**
+         * @param upserts Messages that were added or changed.
+         * @param removedIds Ids of messages that were deleted.
+         */
+        void onRemoteChanges(List<ChatMessage> upserts, List<String> removedIds);
+    }
+
+    /**
+     * Streams the newest limit messages and any later changes to them.
+     * Only one live stream is active at a time.
+     */
+    void listenNewest(int limit, Listener listener);
+
+    /**
+     * Streams every message whose timestamp is at or after sinceTimestamp, plus later changes.
+     * Only one live stream is active at a time.
+     */
+    void listenSince(long sinceTimestamp, Listener listener);
+
+    /**
+     * Fetches up to limit messages with a timestamp at or before beforeTimestamp, newest first.
+     * The listener is called once with the page.
+     */
+    void fetchOlder(long beforeTimestamp, int limit, Listener listener);
+
+    /**
+     * Stops the live stream.
+     */
+    void stop();
+}
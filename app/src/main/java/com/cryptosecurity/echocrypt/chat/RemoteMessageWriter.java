@@ -0,0 +1,29 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import java.util.List;
+
+/**
+ * Writes queued messages to the server, as used by MessageOutbox.
+ */
+public interface RemoteMessageWriter {
+
+    interface Callback {
+        void onCommitted();
+
+        /**
+         * @param permanent True if retrying the same write cannot succeed, e.g. it was rejected
+         *                  by security rules; false for network and availability errors.
+         */
+        void onFailed(Exception e, boolean permanent);
+    }
+
+    /**
+     * Writes every entry atomically, each under its own document id, so repeating a commit
+     * never duplicates a message. The callback runs exactly once.
+     * @param mayExist True if an earlier commit of some of these entries may have reached the
+     *                 server, e.g. it failed ambiguously or was left over from a previous run.
+     *                 Documents that already exist are then left as they are, so a message
+     *                 keeps the server timestamp it was first given.
+     */
+    void commit(List<OutboxStore.Entry> entries, boolean mayExist, Callback callback);
+}
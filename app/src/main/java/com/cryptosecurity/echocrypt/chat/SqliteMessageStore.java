@@ -0,0 +1,222 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.google.firebase.firestore.Blob;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageStore backed by a private SQLite database.
+ * Rows are indexed by (chat room, timestamp) for paging and keyed by (chat room, document id).
+ */
+public class SqliteMessageStore extends SQLiteOpenHelper implements MessageStore {
+
+    private static final String DATABASE_NAME = "messages.db";
+    private static final int DATABASE_VERSION = 3; // 2: binary envelope payload column, 3: attachment id
+    private static final int MAX_QUERY_ARGS = 500; // stay well under SQLite's bound-parameter limit
+
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String COL_CHAT_ROOM_ID = "chat_room_id";
+    private static final String COL_DOC_ID = "doc_id";
+    private static final String COL_SENDER_ID = "sender_id";
+    private static final String COL_RECEIVER_ID = "receiver_id";
+    private static final String COL_CIPHERTEXT = "ciphertext"; // Base64 text from older clients
+    private static final String COL_PAYLOAD = "payload";
+    private static final String COL_ATTACHMENT_ID = "attachment_id";
+    private static final String COL_TIMESTAMP = "timestamp";
+    private static final String COL_WATERMARK = "watermark";
+
+    // Pending messages (NULL timestamp) sort after everything else, as in the timeline
+    private static final String ORDER_NEWEST_FIRST = "(" + COL_TIMESTAMP + " IS NULL) DESC, " + COL_TIMESTAMP + " DESC";
+
+    private static final String[] MESSAGE_COLUMNS = {
+            COL_DOC_ID, COL_SENDER_ID, COL_RECEIVER_ID, COL_CIPHERTEXT, COL_TIMESTAMP, COL_PAYLOAD, COL_ATTACHMENT_ID
+    };
+
+    private static volatile SqliteMessageStore instance;
+
+    public static SqliteMessageStore getInstance(Context context) {
+        if (instance == null) {
+            synchronized (SqliteMessageStore.class) {
+                if (instance == null) {
+                    instance = new SqliteMessageStore(context.getApplicationContext());
+                }
+            }
+        }
+        return instance;
+    }
+
+    private SqliteMessageStore(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + COL_CHAT_ROOM_ID + " TEXT NOT NULL, "
+                + COL_DOC_ID + " TEXT NOT NULL, "
+                + COL_SENDER_ID + " TEXT, "
+                + COL_RECEIVER_ID + " TEXT, "
+                + COL_CIPHERTEXT + " TEXT, "
+                + COL_PAYLOAD + " BLOB, "
+                + COL_ATTACHMENT_ID + " TEXT, "
+                + COL_TIMESTAMP + " INTEGER, "
+                + "PRIMARY KEY (" + COL_CHAT_ROOM_ID + ", " + COL_DOC_ID + "))");
+        db.execSQL("CREATE INDEX idx_messages_room_time ON " + TABLE_MESSAGES
+                + " (" + COL_CHAT_ROOM_ID + ", " + COL_TIMESTAMP + ")");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + COL_CHAT_ROOM_ID + " TEXT PRIMARY KEY, "
+                + COL_WATERMARK + " INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Everything in here can be re-synced from Firestore
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        onCreate(db);
+    }
+
+    @Override
+    public List<ChatMessage> loadNewest(String chatRoomId, int limit) {
+        List<ChatMessage> messages = query(COL_CHAT_ROOM_ID + " = ?",
+                new String[]{chatRoomId}, String.valueOf(limit));
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    @Override
+    public List<ChatMessage> loadOlder(String chatRoomId, long beforeTimestamp, int limit) {
+        List<ChatMessage> messages = query(COL_CHAT_ROOM_ID + " = ? AND " + COL_TIMESTAMP + " < ?",
+                new String[]{chatRoomId, String.valueOf(beforeTimestamp)}, String.valueOf(limit));
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    @Override
+    public Map<String, ChatMessage> findByIds(String chatRoomId, Collection<String> docIds) {
+        Map<String, ChatMessage> found = new HashMap<>();
+        List<String> ids = new ArrayList<>(docIds);
+        for (int start = 0; start < ids.size(); start += MAX_QUERY_ARGS) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_QUERY_ARGS));
+            String[] args = new String[chunk.size() + 1];
+            args[0] = chatRoomId;
+            StringBuilder placeholders = new StringBuilder();
+            for (int i = 0; i < chunk.size(); i++) {
+                args[i + 1] = chunk.get(i);
+                placeholders.append(i == 0 ? "?" : ", ?");
+            }
+            for (ChatMessage message : query(COL_CHAT_ROOM_ID + " = ? AND " + COL_DOC_ID
+                    + " IN (" + placeholders + ")", args, null)) {
+                found.put(message.getId(), message);
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public void upsert(String chatRoomId, List<ChatMessage> messages) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (ChatMessage message : messages) {
+                values.clear();
+                values.put(COL_CHAT_ROOM_ID, chatRoomId);
+                values.put(COL_DOC_ID, message.getId());
+                values.put(COL_SENDER_ID, message.getSenderId());
+                values.put(COL_RECEIVER_ID, message.getReceiverId());
+                values.put(COL_CIPHERTEXT, message.getMessage());
+                if (message.getPayload() != null) {
+                    values.put(COL_PAYLOAD, message.getPayload().toBytes());
+                } else {
+                    values.putNull(COL_PAYLOAD);
+                }
+                values.put(COL_ATTACHMENT_ID, message.getAttachmentId());
+                if (message.getTimestamp() != null) {
+                    values.put(COL_TIMESTAMP, message.getTimestamp().getTime());
+                } else {
+                    values.putNull(COL_TIMESTAMP);
+                }
+                db.insertWithOnConflict(TABLE_MESSAGES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public void remove(String chatRoomId, Collection<String> docIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String docId : docIds) {
+                db.delete(TABLE_MESSAGES, COL_CHAT_ROOM_ID + " = ? AND " + COL_DOC_ID + " = ?",
+                        new String[]{chatRoomId, docId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public long getWatermark(String chatRoomId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SYNC_STATE, new String[]{COL_WATERMARK},
+                COL_CHAT_ROOM_ID + " = ?", new String[]{chatRoomId}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        }
+    }
+
+    @Override
+    public void setWatermark(String chatRoomId, long watermark) {
+        ContentValues values = new ContentValues();
+        values.put(COL_CHAT_ROOM_ID, chatRoomId);
+        values.put(COL_WATERMARK, watermark);
+        getWritableDatabase().insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public int compact(String chatRoomId, int keepNewest) {
+        return getWritableDatabase().delete(TABLE_MESSAGES,
+                COL_CHAT_ROOM_ID + " = ? AND " + COL_DOC_ID + " NOT IN (SELECT " + COL_DOC_ID
+                        + " FROM " + TABLE_MESSAGES + " WHERE " + COL_CHAT_ROOM_ID + " = ?"
+                        + " ORDER BY " + ORDER_NEWEST_FIRST + " LIMIT ?)",
+                new String[]{chatRoomId, chatRoomId, String.valueOf(keepNewest)});
+    }
+
+    // Returns matching rows newest first
+    private List<ChatMessage> query(String selection, String[] args, String limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, MESSAGE_COLUMNS,
+                selection, args, null, null, ORDER_NEWEST_FIRST, limit)) {
+            while (cursor.moveToNext()) {
+                ChatMessage message = new ChatMessage(cursor.getString(3), cursor.getString(1), cursor.getString(2));
+                message.setId(cursor.getString(0));
+                if (!cursor.isNull(4)) {
+                    message.setTimestamp(new Date(cursor.getLong(4)));
+                }
+                if (!cursor.isNull(5)) {
+                    message.setPayload(Blob.fromBytes(cursor.getBlob(5)));
+                }
+                message.setAttachmentId(cursor.getString(6));
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,113 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+import com.google.firebase.firestore.Blob;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * OutboxStore backed by its own SQLite database. It is kept apart from messages.db, whose
+ * contents can be re-synced and are dropped on upgrade; queued messages exist nowhere else.
+ */
+public class SqliteOutboxStore extends SQLiteOpenHelper implements OutboxStore {
+
+    private static final String DATABASE_NAME = "outbox.db";
+    private static final int DATABASE_VERSION = 1;
+
+    private static final String TABLE_OUTBOX = "outbox";
+    private static final String COL_SEQUENCE = "sequence";
+    private static final String COL_CHAT_ROOM_ID = "chat_room_id";
+    private static final String COL_DOC_ID = "doc_id";
+    private static final String COL_SENDER_ID = "sender_id";
+    private static final String COL_RECEIVER_ID = "receiver_id";
+    private static final String COL_PAYLOAD = "payload";
+    private static final String COL_ATTACHMENT_ID = "attachment_id";
+
+    private static final String[] ENTRY_COLUMNS = {
+            COL_CHAT_ROOM_ID, COL_DOC_ID, COL_SENDER_ID, COL_RECEIVER_ID, COL_PAYLOAD, COL_ATTACHMENT_ID
+    };
+
+    public SqliteOutboxStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + COL_SEQUENCE + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COL_CHAT_ROOM_ID + " TEXT NOT NULL, "
+                + COL_DOC_ID + " TEXT NOT NULL UNIQUE, "
+                + COL_SENDER_ID + " TEXT, "
+                + COL_RECEIVER_ID + " TEXT, "
+                + COL_PAYLOAD + " BLOB, "
+                + COL_ATTACHMENT_ID + " TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Only version 1 exists; future versions must migrate rather than drop unsent messages
+    }
+
+    @Override
+    public void enqueue(String chatRoomId, ChatMessage message) {
+        ContentValues values = new ContentValues();
+        values.put(COL_CHAT_ROOM_ID, chatRoomId);
+        values.put(COL_DOC_ID, message.getId());
+        values.put(COL_SENDER_ID, message.getSenderId());
+        values.put(COL_RECEIVER_ID, message.getReceiverId());
+        if (message.getPayload() != null) {
+            values.put(COL_PAYLOAD, message.getPayload().toBytes());
+        } else {
+            values.putNull(COL_PAYLOAD);
+        }
+        values.put(COL_ATTACHMENT_ID, message.getAttachmentId());
+        getWritableDatabase().insertWithOnConflict(TABLE_OUTBOX, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    @Override
+    public List<Entry> peek(int limit) {
+        List<Entry> entries = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_OUTBOX, ENTRY_COLUMNS,
+                null, null, null, null, COL_SEQUENCE + " ASC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                ChatMessage message = new ChatMessage(null, cursor.getString(2), cursor.getString(3));
+                message.setId(cursor.getString(1));
+                if (!cursor.isNull(4)) {
+                    message.setPayload(Blob.fromBytes(cursor.getBlob(4)));
+                }
+                message.setAttachmentId(cursor.getString(5));
+                entries.add(new Entry(cursor.getString(0), message));
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void remove(Collection<String> docIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String docId : docIds) {
+                db.delete(TABLE_OUTBOX, COL_DOC_ID + " = ?", new String[]{docId});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    public int size() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_OUTBOX, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.cryptosecurity.echocrypt.models.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Runs contact searches off the main thread.
+ *
+ * Queries are debounced so a burst of keystrokes costs a single search, the contacts are
+ * sorted by email and re-indexed on the worker whenever they change, and only the result for
+ * the latest query is delivered. Call shutdown() when the owning activity is destroyed.
+ */
+public class ContactSearcher {
+
+    public static final long DEBOUNCE_MS = 150;
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the matches for the latest query.
+         */
+        void onResults(String query, List<User> results);
+    }
+
+    private final Callback callback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ContactSearcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Runnable debouncedSearch = this::searchNow;
+
+    // Only touched on the worker
+    private ContactSearchIndex index = new ContactSearchIndex(new ArrayList<>());
+
+    // Only touched on the main thread
+    private String query = "";
+    private int generation;
+    private boolean shutDown;
+
+    public ContactSearcher(Callback callback) {
+        this.callback = callback;
+    }
+
+    /**
+     * Replaces the searchable contacts, in any order, and re-runs the current query against them.
+     * Results come back in email order.
+     */
+    public void setContacts(Collection<User> contacts) {
+        if (shutDown) return;
+        List<User> snapshot = new ArrayList<>(contacts);
+        executor.execute(() -> index = ContactSearchIndex.sortedByEmail(snapshot));
+        mainHandler.removeCallbacks(debouncedSearch);
+        searchNow();
+    }
+
+    /**
+     * Schedules a search for query once typing pauses for DEBOUNCE_MS.
+     */
+    public void search(String query) {
+        if (shutDown) return;
+        this.query = query;
+        generation++; // results for older queries are stale from now on
+        mainHandler.removeCallbacks(debouncedSearch);
+        mainHandler.postDelayed(debouncedSearch, DEBOUNCE_MS);
+    }
+
+    public void shutdown() {
+        shutDown = true;
+        mainHandler.removeCallbacksAndMessages(null);
+        executor.shutdownNow();
+    }
+
+    private void searchNow() {
+        String currentQuery = query;
+        int currentGeneration = ++generation;
+        executor.execute(() -> {
+            List<User> results = index.search(currentQuery);
+            mainHandler.post(() -> {
+                if (!shutDown && currentGeneration == generation) {
+                    callback.onResults(currentQuery, results);
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,325 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import com.cryptosecurity.echocrypt.crypto.EncryptionHelper;
+import com.cryptosecurity.echocrypt.models.User;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Process-wide directory of peers' public keys, so opening a chat never waits on the network
+ * for key material.
+ *
+ * Keys are cached already parsed, keyed by uid and tagged with their fingerprint, in an LRU
+ * memory tier backed by SharedPreferences. Public keys are not secret, so the disk tier holds
+ * them exactly as Firestore does. Reads are cache-first: refresh() revalidates a key in the
+ * background, and prefetch() warms the cache for the contacts on screen, batching uids it
+ * knows nothing about into chunked whereIn queries.
+ */
+public class PublicKeyDirectory {
+
+    private static final String TAG = "PublicKeyDirectory";
+    private static final int MAX_ENTRIES = 256;
+    private static final int MAX_WHERE_IN = 10; // Firestore's limit on values in a whereIn filter
+    private static final String PREFS_NAME = "echocrypt_public_keys";
+
+    private static volatile PublicKeyDirectory instance;
+
+    /**
+     * A parsed public key together with the Firestore string it came from.
+     */
+    public static class Entry {
+        public final String publicKeyString;
+        public final String fingerprint;
+        public final PublicKey publicKey;
+
+        Entry(String publicKeyString, String fingerprint, PublicKey publicKey) {
+            this.publicKeyString = publicKeyString;
+            this.fingerprint = fingerprint;
+            this.publicKey = publicKey;
+        }
+    }
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the peer's current key.
+         */
+        void onKey(Entry entry);
+
+        /**
+         * Called on the main thread if the key could not be fetched. The exception is null
+         * when the user has no usable public key.
+         */
+        void onError(Exception e);
+    }
+
+    public interface CachedCallback {
+        /**
+         * Called on the main thread with the cached key, or null if none is known.
+         */
+        void onCached(Entry entry);
+    }
+
+    private final Map<String, Entry> memoryTier;
+    private final Set<String> queuedPrefetches = new HashSet<>(); // guarded by this
+    private final Set<String> requested = new HashSet<>(); // uids already fetched or in flight, guarded by this
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService executor;
+    private SharedPreferences diskTier; // null until enableDiskTier() is called
+    private boolean flushScheduled;
+
+    private PublicKeyDirectory() {
+        memoryTier = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PublicKeyDirectory.Entry> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "PublicKeyDirectory");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    public static PublicKeyDirectory getInstance() {
+        if (instance == null) {
+            synchronized (PublicKeyDirectory.class) {
+                if (instance == null) {
+                    instance = new PublicKeyDirectory();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Enables the on-disk tier. Safe to call more than once.
+     */
+    public synchronized void enableDiskTier(Context context) {
+        if (diskTier == null) {
+            diskTier = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+    }
+
+    /**
+     * Looks up the cached key for a peer without touching the disk on the main thread: a memory
+     * hit is handed over right away, anything else is read and parsed on the directory's worker.
+     * Call from the main thread.
+     */
+    public void loadCached(String uid, CachedCallback callback) {
+        Entry inMemory;
+        synchronized (this) {
+            inMemory = memoryTier.get(uid);
+        }
+        if (inMemory != null) {
+            callback.onCached(inMemory);
+            return;
+        }
+        executor.execute(() -> {
+            Entry entry = getCached(uid);
+            mainHandler.post(() -> callback.onCached(entry));
+        });
+    }
+
+    /**
+     * @return The cached key for a peer from memory or disk, or null if none is known.
+     *         A disk hit is read and parsed on the calling thread.
+     */
+    @WorkerThread
+    public synchronized Entry getCached(String uid) {
+        Entry entry = memoryTier.get(uid);
+        if (entry == null && diskTier != null) {
+            String stored = diskTier.getString(uid, null);
+            if (stored != null) {
+                entry = parse(uid, stored);
+                if (entry != null) {
+                    memoryTier.put(uid, entry);
+                } else {
+                    diskTier.edit().remove(uid).apply();
+                }
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Fetches the peer's key from Firestore in the background and caches it.
+     * The callback runs even if the key is unchanged, so callers can compare fingerprints.
+     */
+    public void refresh(String uid, Callback callback) {
+        synchronized (this) {
+            requested.add(uid);
+        }
+        FirebaseFirestore.getInstance().collection("users").document(uid).get()
+                .addOnSuccessListener(executor, snapshot -> {
+                    User user = snapshot.toObject(User.class);
+                    Entry entry = user != null ? store(uid, user.getPublicKey()) : null;
+                    mainHandler.post(() -> {
+                        if (entry != null) {
+                            callback.onKey(entry);
+                        } else {
+                            callback.onError(null);
+                        }
+                    });
+                })
+                .addOnFailureListener(executor, e -> {
+                    synchronized (this) {
+                        requested.remove(uid);
+                    }
+                    mainHandler.post(() -> callback.onError(e));
+                });
+    }
+
+    /**
+     * Returns the cached key for a peer, fetching it from Firestore on the calling thread on a
+     * miss. Never call from the main thread.
+     * @return The peer's key, or null if the user has no usable public key.
+     */
+    @WorkerThread
+    public Entry fetch(String uid, long timeoutMs)
+            throws ExecutionException, InterruptedException, TimeoutException {
+        Entry entry = getCached(uid);
+        if (entry != null) return entry;
+        synchronized (this) {
+            requested.add(uid);
+        }
+        try {
+            DocumentSnapshot snapshot = Tasks.await(
+                    FirebaseFirestore.getInstance().collection("users").document(uid).get(),
+                    timeoutMs, TimeUnit.MILLISECONDS);
+            User user = snapshot.toObject(User.class);
+            return user != null ? store(uid, user.getPublicKey()) : null;
+        } catch (ExecutionException | InterruptedException | TimeoutException e) {
+            synchronized (this) {
+                requested.remove(uid);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Warms the cache for a contact about to be shown. A key already present on the user
+     * document is cached directly; unknown uids are batched into whereIn queries at the end
+     * of the current main-thread frame. Call from the main thread.
+     */
+    public void prefetch(User user) {
+        String uid = user.getUid();
+        if (uid == null) return;
+        String publicKeyString = user.getPublicKey();
+        synchronized (this) {
+            Entry cached = memoryTier.get(uid);
+            if (cached != null && (publicKeyString == null || cached.publicKeyString.equals(publicKeyString))) {
+                return;
+            }
+            if (publicKeyString == null) {
+                if (requested.contains(uid) || (diskTier != null && diskTier.getString(uid, null) != null)) {
+                    return;
+                }
+                queuedPrefetches.add(uid);
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    mainHandler.post(this::flushPrefetches);
+                }
+                return;
+            }
+        }
+        executor.execute(() -> store(uid, publicKeyString));
+    }
+
+    /**
+     * Drops every cached key from both tiers, e.g. on logout.
+     */
+    public synchronized void clear() {
+        memoryTier.clear();
+        requested.clear();
+        queuedPrefetches.clear();
+        if (diskTier != null) {
+            diskTier.edit().clear().apply();
+        }
+    }
+
+    private void flushPrefetches() {
+        List<String> uids;
+        synchronized (this) {
+            flushScheduled = false;
+            uids = new ArrayList<>(queuedPrefetches);
+            queuedPrefetches.clear();
+            requested.addAll(uids);
+        }
+        for (int start = 0; start < uids.size(); start += MAX_WHERE_IN) {
+            List<String> chunk = uids.subList(start, Math.min(uids.size(), start + MAX_WHERE_IN));
+            FirebaseFirestore.getInstance().collection("users")
+                    .whereIn(FieldPath.documentId(), new ArrayList<>(chunk))
+                    .get()
+                    .addOnSuccessListener(executor, snapshots -> {
+                        for (DocumentSnapshot snapshot : snapshots.getDocuments()) {
+                            User user = snapshot.toObject(User.class);
+                            if (user != null) {
+                                store(snapshot.getId(), user.getPublicKey());
+                            }
+                        }
+                    })
+                    .addOnFailureListener(executor, e -> {
+                        Log.e(TAG, "Key prefetch failed", e);
+                        synchronized (this) {
+                            requested.removeAll(chunk);
+                        }
+                    });
+        }
+    }
+
+    // Parses outside the lock, then caches unless the same key is already there
+    private Entry store(String uid, String publicKeyString) {
+        if (publicKeyString == null || publicKeyString.isEmpty()) return null;
+        synchronized (this) {
+            Entry cached = memoryTier.get(uid);
+            if (cached != null && cached.publicKeyString.equals(publicKeyString)) return cached;
+        }
+        Entry entry = parse(uid, publicKeyString);
+        if (entry == null) return null;
+        synchronized (this) {
+            memoryTier.put(uid, entry);
+            if (diskTier != null) {
+                diskTier.edit().putString(uid, publicKeyString).apply();
+            }
+        }
+        return entry;
+    }
+
+    private static Entry parse(String uid, String publicKeyString) {
+        try {
+            return new Entry(publicKeyString, EncryptionHelper.getKeyFingerprint(publicKeyString),
+                    EncryptionHelper.getPublicKeyFromString(publicKeyString));
+        } catch (Exception e) {
+            Log.e(TAG, "Unusable public key for " + uid, e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.cryptosecurity.echocrypt.crypto.EncryptionHelper;
+import com.cryptosecurity.echocrypt.crypto.KeyManager;
+import com.cryptosecurity.echocrypt.crypto.SessionKeyCache;
+
+import java.security.PrivateKey;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Derives session keys speculatively from the contact list, so tapping a contact opens a chat
+ * that can send straight away.
+ *
+ * A row that stays on screen for DWELL_MS, or is touched, gets its peer's key fetched through
+ * PublicKeyDirectory and the ECDH secret stored in SessionKeyCache, where ChatActivity finds it.
+ * At most MAX_CONCURRENT warm-ups run at once and the newest request runs first, so a touch
+ * overtakes rows that merely scrolled past. Rows that leave the screen cancel their warm-up.
+ *
+ * Call from the main thread, and call shutdown() when the owning activity is destroyed.
+ */
+public class SessionWarmer {
+
+    private static final String TAG = "SessionWarmer";
+    public static final long DWELL_MS = 300;
+    private static final int MAX_CONCURRENT = 2;
+    private static final long FETCH_TIMEOUT_MS = 10_000;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ThreadPoolExecutor executor;
+    private final PublicKeyDirectory publicKeyDirectory = PublicKeyDirectory.getInstance();
+    private final SessionKeyCache sessionKeyCache = SessionKeyCache.getInstance();
+
+    // Only touched on the main thread
+    private final Map<String, Runnable> pendingDwell = new HashMap<>();
+    private final Map<String, FutureTask<Boolean>> inFlight = new HashMap<>();
+    private final Set<String> warmed = new HashSet<>();
+    private boolean shutDown;
+
+    public SessionWarmer() {
+        executor = new ThreadPoolExecutor(MAX_CONCURRENT, MAX_CONCURRENT, 30, TimeUnit.SECONDS,
+                new LifoQueue(), runnable -> {
+                    Thread thread = new Thread(runnable, "SessionWarmer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Warms the session for uid if its row is still on screen after DWELL_MS.
+     */
+    public void warmIfLingering(String uid) {
+        if (shutDown || uid == null || isWarmOrWarming(uid) || pendingDwell.containsKey(uid)) return;
+        Runnable dwell = () -> {
+            pendingDwell.remove(uid);
+            warmNow(uid);
+        };
+        pendingDwell.put(uid, dwell);
+        mainHandler.postDelayed(dwell, DWELL_MS);
+    }
+
+    /**
+     * Starts warming the session for uid without waiting, e.g. on touch-down.
+     */
+    public void warmNow(String uid) {
+        if (shutDown || uid == null) return;
+        Runnable dwell = pendingDwell.remove(uid);
+        if (dwell != null) {
+            mainHandler.removeCallbacks(dwell);
+        }
+        if (isWarmOrWarming(uid)) return;
+
+        FutureTask<Boolean> task = new FutureTask<Boolean>(() -> warm(uid)) {
+            @Override
+            protected void done() {
+                mainHandler.post(() -> finished(uid, this));
+            }
+        };
+        inFlight.put(uid, task);
+        executor.execute(task);
+    }
+
+    /**
+     * Drops a pending or running warm-up, e.g. when its row is recycled.
+     */
+    public void cancel(String uid) {
+        Runnable dwell = pendingDwell.remove(uid);
+        if (dwell != null) {
+            mainHandler.removeCallbacks(dwell);
+        }
+        FutureTask<Boolean> task = inFlight.remove(uid);
+        if (task != null) {
+            task.cancel(true);
+        }
+    }
+
+    public void shutdown() {
+        shutDown = true;
+        mainHandler.removeCallbacksAndMessages(null);
+        pendingDwell.clear();
+        inFlight.clear();
+        executor.shutdownNow();
+    }
+
+    private boolean isWarmOrWarming(String uid) {
+        return warmed.contains(uid) || inFlight.containsKey(uid);
+    }
+
+    private void finished(String uid, FutureTask<Boolean> task) {
+        if (inFlight.get(uid) == task) {
+            inFlight.remove(uid);
+        }
+        if (shutDown || task.isCancelled()) return;
+        try {
+            if (task.get()) {
+                warmed.add(uid);
+            }
+        } catch (ExecutionException | InterruptedException | CancellationException e) {
+            // Speculative work: ChatActivity will fetch and derive the key itself
+            Log.w(TAG, "Warm-up failed for " + uid, e);
+        }
+    }
+
+    // Runs on a worker; returns true once the session key is in SessionKeyCache
+    private boolean warm(String uid) throws Exception {
+        PublicKeyDirectory.Entry entry = publicKeyDirectory.fetch(uid, FETCH_TIMEOUT_MS);
+        if (entry == null || Thread.currentThread().isInterrupted()) return false;
+        if (sessionKeyCache.get(uid, entry.publicKeyString) != null) return true;
+
+        PrivateKey myPrivateKey = KeyManager.getInstance().getPrivateKey();
+        if (myPrivateKey == null) return false;
+        SecretKey secret = EncryptionHelper.generateSharedSecret(myPrivateKey, entry.publicKey);
+        if (secret == null || executor.isShutdown()) return false;
+        // Cached even if the row was recycled meanwhile: the expensive part is already done
+        sessionKeyCache.put(uid, entry.publicKeyString, secret);
+        return true;
+    }
+
+    // ThreadPoolExecutor enqueues with offer(); pushing to the front makes the newest request run next
+    private static final class LifoQueue extends LinkedBlockingDeque<Runnable> {
+        @Override
+        public boolean offer(Runnable runnable) {
+            return offerFirst(runnable);
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import com.cryptosecurity.echocrypt.models.User;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QuerySnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the users collection ordered by email instead of loading it whole.
+ *
+ * An empty query browses the directory; any other query becomes a server-side prefix range on
+ * email. Both are paged with a document cursor, one page in flight at a time, and a page that
+ * arrives after the query changed is dropped. The first browse page can be handed in already
+ * fetched, or still in flight, from startup. Firestore ranges are case-sensitive, so the
+ * prefix is lower-cased to match emails as they are normally registered.
+ *
+ * Not thread-safe; use from the main thread.
+ */
+public class UserDirectory {
+
+    public static final int PAGE_SIZE = 50;
+    private static final String FIELD_EMAIL = "email";
+    private static final String PREFIX_END = "\uf8ff"; // sorts after any character used in an email
+
+    public interface Callback {
+        /**
+         * Called on the main thread with the next page of users for query, in email order.
+         * The signed-in user is never included.
+         */
+        void onPage(String query, List<User> users, boolean hasMore);
+
+        void onError(String query, Exception e);
+    }
+
+    private final CollectionReference usersRef;
+    private final String currentUserId;
+    private final Callback callback;
+
+    private String query = "";
+    private DocumentSnapshot lastDocument;
+    private boolean loading;
+    private boolean hasMore = true;
+    private int generation;
+    private Task<QuerySnapshot> prefetchedFirstPage;
+
+    public UserDirectory(CollectionReference usersRef, String currentUserId, Callback callback) {
+        this.usersRef = usersRef;
+        this.currentUserId = currentUserId;
+        this.callback = callback;
+    }
+
+    /**
+     * @return The query for the first page of the unfiltered directory, for prefetching.
+     */
+    public static Query firstBrowsePage(CollectionReference usersRef) {
+        return usersRef.orderBy(FIELD_EMAIL).limit(PAGE_SIZE);
+    }
+
+    /**
+     * Uses page, a get() of firstBrowsePage(), for the next first page of the empty query
+     * instead of fetching it again. Call before setQuery("").
+     */
+    public void usePrefetchedFirstPage(Task<QuerySnapshot> page) {
+        prefetchedFirstPage = page;
+    }
+
+    /**
+     * Starts over with a new query and loads its first page.
+     */
+    public void setQuery(String query) {
+        this.query = ContactSearchIndex.normalize(query);
+        lastDocument = null;
+        loading = false;
+        hasMore = true;
+        generation++;
+        loadMore();
+    }
+
+    public String getQuery() {
+        return query;
+    }
+
+    public boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Loads the next page for the current query, unless one is already loading or there is none.
+     */
+    public void loadMore() {
+        if (loading || !hasMore) return;
+        loading = true;
+
+        int requested = generation;
+        String requestedQuery = query;
+        Task<QuerySnapshot> request;
+        if (prefetchedFirstPage != null && query.isEmpty() && lastDocument == null) {
+            request = prefetchedFirstPage;
+            prefetchedFirstPage = null;
+        } else {
+            request = pageQuery().get();
+        }
+        request.addOnCompleteListener(task -> {
+            if (requested != generation) return;
+            loading = false;
+            if (!task.isSuccessful()) {
+                callback.onError(requestedQuery, task.getException());
+                return;
+            }
+            List<DocumentSnapshot> documents = task.getResult().getDocuments();
+            List<User> users = new ArrayList<>(documents.size());
+            for (DocumentSnapshot document : documents) {
+                User user = document.toObject(User.class);
+                if (user != null && !currentUserId.equals(user.getUid())) {
+                    users.add(user);
+                }
+            }
+            hasMore = documents.size() == PAGE_SIZE;
+            if (!documents.isEmpty()) {
+                lastDocument = documents.get(documents.size() - 1);
+            }
+            callback.onPage(requestedQuery, users, hasMore);
+        });
+    }
+
+    private Query pageQuery() {
+        Query page = usersRef.orderBy(FIELD_EMAIL);
+        // A query takes a single start cursor, so after the first page the document replaces the prefix bound
+        if (lastDocument != null) {
+            page = page.startAfter(lastDocument);
+        } else if (!query.isEmpty()) {
+            page = page.startAt(query);
+        }
+        if (!query.isEmpty()) {
+            page = page.endAt(query + PREFIX_END);
+        }
+        return page.limit(PAGE_SIZE);
+    }
+}
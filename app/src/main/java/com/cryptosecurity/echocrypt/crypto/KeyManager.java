@@ -6,6 +6,10 @@ import android.security.keystore.KeyProperties;
 import android.util.Base64;
 import android.util.Log;
 
+import androidx.annotation.WorkerThread;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
 import java.io.IOException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.KeyPair;
@@ -17,30 +21,116 @@ import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Process-wide access to the user's ECC key pair in the Android Keystore.
+ *
+ * The Keystore is loaded once, lazily, on first use. The private key handle, the public key
+ * and its Base64 form are looked up once and then served from memory, so repeated calls cost
+ * no Keystore IPC. The future-based methods do any Keystore work on a background thread, so
+ * main-thread callers never block on it; the blocking getters are for code already on a worker.
+ *
+ * Thread-safe. Lookups that fail return null and are retried on the next call.
+ */
 public class KeyManager {
 
     private static final String KEY_ALIAS = "EchoCryptKeyAlias";
     private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
     private static final String TAG = "KeyManager";
 
-    private KeyStore keyStore;
+    private static volatile KeyManager instance;
 
-    public KeyManager() {
-        try {
-            keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
-            keyStore.load(null);
-        } catch (KeyStoreException | CertificateException | IOException | NoSuchAlgorithmException e) {
-            Log.e(TAG, "Failed to initialize KeyStore", e);
+    // One thread keeps Keystore access in order; it exits when idle
+    private final ExecutorService executor;
+    private KeyStore keyStore; // guarded by this
+    private volatile PrivateKey privateKey;
+    private volatile PublicKey publicKey;
+    private volatile String publicKeyString;
+
+    private KeyManager() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "KeyManager");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    public static KeyManager getInstance() {
+        if (instance == null) {
+            synchronized (KeyManager.class) {
+                if (instance == null) {
+                    instance = new KeyManager();
+                }
+            }
         }
+        return instance;
+    }
+
+    /**
+     * Completes with the private key handle, or null if there is none or it cannot be read.
+     */
+    public CompletableFuture<PrivateKey> privateKey() {
+        PrivateKey cached = privateKey;
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return CompletableFuture.supplyAsync(this::getPrivateKey, executor);
+    }
+
+    /**
+     * Completes with the public key Base64-encoded for Firestore, or null on failure.
+     */
+    public CompletableFuture<String> publicKeyString() {
+        String cached = publicKeyString;
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        return CompletableFuture.supplyAsync(this::getPublicKeyAsString, executor);
+    }
+
+    /**
+     * Generates the key pair if it does not exist yet, off the main thread. Called once when a
+     * user registers.
+     * @return Completes with the Base64-encoded public key, or null if generation failed.
+     */
+    public CompletableFuture<String> generateKeyPairAsync() {
+        return CompletableFuture.supplyAsync(() -> {
+            generateKeyPair();
+            return getPublicKeyAsString();
+        }, executor);
+    }
+
+    /**
+     * Runs other Keystore work, e.g. loading another key, on the same background thread.
+     * @return Completes with the task's result, or exceptionally if it throws.
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
     }
 
     /**
      * Generates a new ECC public/private key pair and stores it securely in the Android Keystore.
      * This should be called once when a user registers.
      */
-    public void generateKeyPair() {
+    @WorkerThread
+    public synchronized void generateKeyPair() {
+        KeyStore keyStore = keyStore();
+        if (keyStore == null) return;
         try {
             if (!keyStore.containsAlias(KEY_ALIAS)) {
                 KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance(
@@ -55,6 +145,10 @@ public class KeyManager {
 
                 keyPairGenerator.initialize(parameterSpec);
                 keyPairGenerator.generateKeyPair();
+                // Anything cached belonged to no key or an older one
+                privateKey = null;
+                publicKey = null;
+                publicKeyString = null;
                 Log.d(TAG, "Key pair generated successfully.");
             } else {
                 Log.d(TAG, "Key pair already exists.");
@@ -65,28 +159,59 @@ public class KeyManager {
     }
 
     /**
-     * Retrieves the user's private key from the Android Keystore.
+     * Retrieves the user's private key from the Android Keystore, or from memory after the first time.
      * @return The PrivateKey object, or null if an error occurs.
      */
+    @WorkerThread
     public PrivateKey getPrivateKey() {
-        try {
-            return (PrivateKey) keyStore.getKey(KEY_ALIAS, null);
-        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
-            Log.e(TAG, "Failed to get private key", e);
-            return null;
+        PrivateKey cached = privateKey;
+        if (cached != null) return cached;
+        long start = CryptoMetrics.start();
+        synchronized (this) {
+            if (privateKey != null) return privateKey;
+            KeyStore keyStore = keyStore();
+            if (keyStore == null) {
+                CryptoMetrics.recordFailure(CryptoMetrics.Op.GET_PRIVATE_KEY, start, "KeyStoreUnavailable");
+                return null;
+            }
+            try {
+                PrivateKey key = (PrivateKey) keyStore.getKey(KEY_ALIAS, null);
+                if (key != null) {
+                    CryptoMetrics.recordSuccess(CryptoMetrics.Op.GET_PRIVATE_KEY, start, 0);
+                    privateKey = key;
+                } else {
+                    CryptoMetrics.recordFailure(CryptoMetrics.Op.GET_PRIVATE_KEY, start, "MissingKey");
+                }
+                return key;
+            } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
+                CryptoMetrics.recordFailure(CryptoMetrics.Op.GET_PRIVATE_KEY, start, e);
+                Log.e(TAG, "Failed to get private key", e);
+                return null;
+            }
         }
     }
 
     /**
-     * Retrieves the user's public key from the Android Keystore.
+     * Retrieves the user's public key from the Android Keystore, or from memory after the first time.
      * @return The PublicKey object, or null if an error occurs.
      */
+    @WorkerThread
     public PublicKey getPublicKey() {
-        try {
-            return keyStore.getCertificate(KEY_ALIAS).getPublicKey();
-        } catch (KeyStoreException e) {
-            Log.e(TAG, "Failed to get public key", e);
-            return null;
+        PublicKey cached = publicKey;
+        if (cached != null) return cached;
+        synchronized (this) {
+            if (publicKey != null) return publicKey;
+            KeyStore keyStore = keyStore();
+            if (keyStore == null) return null;
+            try {
+                Certificate certificate = keyStore.getCertificate(KEY_ALIAS);
+                if (certificate == null) return null;
+                publicKey = certificate.getPublicKey();
+                return publicKey;
+            } catch (KeyStoreException e) {
+                Log.e(TAG, "Failed to get public key", e);
+                return null;
+            }
         }
     }
 
@@ -95,11 +220,29 @@ public class KeyManager {
      * This format is safe to store in Firestore.
      * @return The Base64 encoded public key string, or null on failure.
      */
+    @WorkerThread
     public String getPublicKeyAsString() {
+        String cached = publicKeyString;
+        if (cached != null) return cached;
         PublicKey publicKey = getPublicKey();
         if (publicKey != null) {
-            return Base64.encodeToString(publicKey.getEncoded(), Base64.DEFAULT);
+            publicKeyString = Base64.encodeToString(publicKey.getEncoded(), Base64.DEFAULT);
+            return publicKeyString;
         }
         return null;
     }
+
+    // Loads the Keystore on first use; a failed load is retried next time
+    private synchronized KeyStore keyStore() {
+        if (keyStore == null) {
+            try {
+                KeyStore loaded = KeyStore.getInstance(ANDROID_KEYSTORE);
+                loaded.load(null);
+                keyStore = loaded;
+            } catch (KeyStoreException | CertificateException | IOException | NoSuchAlgorithmException e) {
+                Log.e(TAG, "Failed to initialize KeyStore", e);
+            }
+        }
+        return keyStore;
+    }
 }
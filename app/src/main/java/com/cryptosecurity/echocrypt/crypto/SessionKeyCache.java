@@ -0,0 +1,237 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.security.keystore.KeyGenParameterSpec;
+import android.security.keystore.KeyProperties;
+import android.util.Base64;
+import android.util.Log;
+
+import androidx.annotation.WorkerThread;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Process-wide cache of ECDH session keys, so reopening a conversation skips both
+ * public key parsing and the Keystore key agreement.
+ *
+ * Entries are keyed by the peer's uid and remember the fingerprint of the public key
+ * they were derived from. A lookup with a different public key (the peer re-registered)
+ * invalidates the entry instead of returning a stale secret.
+ *
+ * The disk tier's wrapping key lives in the Android Keystore and is loaded on KeyManager's
+ * background thread, so enableDiskTier() returns at once. A lookup that misses memory waits
+ * for that load, which is why get() and put() belong on a worker thread.
+ */
+public class SessionKeyCache {
+
+    private static final String TAG = "SessionKeyCache";
+    private static final int MAX_ENTRIES = 64;
+
+    private static final String ANDROID_KEYSTORE = "AndroidKeyStore";
+    private static final String WRAP_KEY_ALIAS = "EchoCryptSessionCacheKey";
+    private static final String WRAP_ALGORITHM = "AES/GCM/NoPadding";
+    private static final String PREFS_NAME = "echocrypt_session_keys";
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int GCM_TAG_LENGTH = 128;
+
+    private static volatile SessionKeyCache instance;
+
+    private final Map<String, CachedKey> memoryTier;
+    private SharedPreferences diskTier; // null until enableDiskTier() is called
+    private volatile CompletableFuture<SecretKey> wrappingKey; // null until enableDiskTier() is called
+
+    private static class CachedKey {
+        final String fingerprint;
+        final SecretKey sessionKey;
+
+        CachedKey(String fingerprint, SecretKey sessionKey) {
+            this.fingerprint = fingerprint;
+            this.sessionKey = sessionKey;
+        }
+    }
+
+    private SessionKeyCache() {
+        // Access-ordered LinkedHashMap gives us LRU eviction for free
+        memoryTier = new LinkedHashMap<String, CachedKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedKey> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+
+    public static SessionKeyCache getInstance() {
+        if (instance == null) {
+            synchronized (SessionKeyCache.class) {
+                if (instance == null) {
+                    instance = new SessionKeyCache();
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Enables the on-disk tier. Session keys are wrapped with an AES key that never leaves
+     * the Android Keystore before being written to SharedPreferences. The wrapping key is
+     * loaded in the background; safe to call from the main thread, and more than once.
+     */
+    public synchronized void enableDiskTier(Context context) {
+        if (diskTier != null) return;
+        diskTier = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        wrappingKey = KeyManager.getInstance().submit(SessionKeyCache::getOrCreateWrappingKey);
+        wrappingKey.exceptionally(e -> {
+            Log.e(TAG, "Failed to enable disk tier, continuing memory-only", e);
+            return null;
+        });
+    }
+
+    /**
+     * Looks up the session key for a peer.
+     * @param peerUid The peer's uid.
+     * @param peerPublicKey The peer's current Base64 public key, as stored in Firestore.
+     * @return The cached SecretKey, or null on a miss or if the peer's key has changed.
+     */
+    @WorkerThread
+    public SecretKey get(String peerUid, String peerPublicKey) {
+        String fingerprint = EncryptionHelper.getKeyFingerprint(peerPublicKey);
+        // Waited for outside the lock, so the main thread's clear() never queues behind the Keystore
+        SecretKey key = awaitWrappingKey();
+        synchronized (this) {
+            CachedKey entry = memoryTier.get(peerUid);
+            if (entry == null) {
+                entry = readFromDisk(peerUid, key);
+                if (entry != null) {
+                    memoryTier.put(peerUid, entry);
+                }
+            }
+            if (entry == null) {
+                return null;
+            }
+            if (!entry.fingerprint.equals(fingerprint)) {
+                Log.d(TAG, "Public key changed for " + peerUid + ", invalidating session key.");
+                invalidate(peerUid);
+                return null;
+            }
+            return entry.sessionKey;
+        }
+    }
+
+    /**
+     * Stores a freshly derived session key for a peer.
+     * @param peerUid The peer's uid.
+     * @param peerPublicKey The Base64 public key the session key was derived from.
+     * @param sessionKey The derived shared secret.
+     */
+    @WorkerThread
+    public void put(String peerUid, String peerPublicKey, SecretKey sessionKey) {
+        CachedKey entry = new CachedKey(EncryptionHelper.getKeyFingerprint(peerPublicKey), sessionKey);
+        SecretKey key = awaitWrappingKey();
+        synchronized (this) {
+            memoryTier.put(peerUid, entry);
+            writeToDisk(peerUid, entry, key);
+        }
+    }
+
+    public synchronized void invalidate(String peerUid) {
+        memoryTier.remove(peerUid);
+        if (diskTier != null) {
+            diskTier.edit().remove(peerUid).apply();
+        }
+    }
+
+    /**
+     * Drops every cached session key from both tiers, e.g. on logout.
+     */
+    public synchronized void clear() {
+        memoryTier.clear();
+        if (diskTier != null) {
+            diskTier.edit().clear().apply();
+        }
+    }
+
+    // The disk tier's wrapping key once loaded, or null if the tier is off or failed to load
+    private SecretKey awaitWrappingKey() {
+        CompletableFuture<SecretKey> pending = wrappingKey;
+        if (pending == null) return null;
+        try {
+            return pending.join();
+        } catch (CompletionException e) {
+            return null; // logged by enableDiskTier()
+        }
+    }
+
+    // Disk format: "<fingerprint>:<Base64(iv || wrapped key)>"
+    private CachedKey readFromDisk(String peerUid, SecretKey wrappingKey) {
+        if (diskTier == null || wrappingKey == null) return null;
+        String stored = diskTier.getString(peerUid, null);
+        if (stored == null) return null;
+        int separator = stored.indexOf(':');
+        if (separator < 0) {
+            diskTier.edit().remove(peerUid).apply();
+            return null;
+        }
+        try {
+            byte[] ivAndWrapped = Base64.decode(stored.substring(separator + 1), Base64.NO_WRAP);
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.DECRYPT_MODE, wrappingKey,
+                    new GCMParameterSpec(GCM_TAG_LENGTH, ivAndWrapped, 0, GCM_IV_LENGTH));
+            byte[] rawKey = cipher.doFinal(ivAndWrapped, GCM_IV_LENGTH, ivAndWrapped.length - GCM_IV_LENGTH);
+            return new CachedKey(stored.substring(0, separator), new SecretKeySpec(rawKey, "AES"));
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Dropping unreadable disk entry for " + peerUid, e);
+            diskTier.edit().remove(peerUid).apply();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String peerUid, CachedKey entry, SecretKey wrappingKey) {
+        if (diskTier == null || wrappingKey == null) return;
+        try {
+            // The Keystore generates the IV itself for randomized encryption
+            Cipher cipher = Cipher.getInstance(WRAP_ALGORITHM);
+            cipher.init(Cipher.ENCRYPT_MODE, wrappingKey);
+            byte[] iv = cipher.getIV();
+            byte[] wrapped = cipher.doFinal(entry.sessionKey.getEncoded());
+
+            byte[] ivAndWrapped = new byte[iv.length + wrapped.length];
+            System.arraycopy(iv, 0, ivAndWrapped, 0, iv.length);
+            System.arraycopy(wrapped, 0, ivAndWrapped, iv.length, wrapped.length);
+
+            diskTier.edit()
+                    .putString(peerUid, entry.fingerprint + ":" + Base64.encodeToString(ivAndWrapped, Base64.NO_WRAP))
+                    .apply();
+        } catch (GeneralSecurityException e) {
+            Log.e(TAG, "Failed to persist session key for " + peerUid, e);
+        }
+    }
+
+    private static SecretKey getOrCreateWrappingKey() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(ANDROID_KEYSTORE);
+        keyStore.load(null);
+        if (keyStore.containsAlias(WRAP_KEY_ALIAS)) {
+            return (SecretKey) keyStore.getKey(WRAP_KEY_ALIAS, null);
+        }
+        KeyGenerator keyGenerator = KeyGenerator.getInstance(KeyProperties.KEY_ALGORITHM_AES, ANDROID_KEYSTORE);
+        keyGenerator.init(new KeyGenParameterSpec.Builder(
+                WRAP_KEY_ALIAS,
+                KeyProperties.PURPOSE_ENCRYPT | KeyProperties.PURPOSE_DECRYPT)
+                .setBlockModes(KeyProperties.BLOCK_MODE_GCM)
+                .setEncryptionPaddings(KeyProperties.ENCRYPTION_PADDING_NONE)
+                .setKeySize(256)
+                .build());
+        return keyGenerator.generateKey();
+    }
+}
@@ -0,0 +1,18 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import android.util.Log;
+
+/**
+ * Writes each snapshot to logcat, one line per operation.
+ */
+public class LogcatMetricsSink implements MetricsSink {
+
+    private static final String TAG = "CryptoMetrics";
+
+    @Override
+    public void publish(CryptoMetrics.Snapshot snapshot) {
+        for (String line : snapshot.format().split("\n")) {
+            Log.i(TAG, line);
+        }
+    }
+}
@@ -1,10 +1,15 @@
 package com.cryptosecurity.echocrypt.models;
 
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentId;
 import com.google.firebase.firestore.ServerTimestamp;
 import java.util.Date;
 
 public class ChatMessage {
+    private String id; // Firestore document id, not stored as a field
     private String message;
+    private Blob payload; // Encrypted MessageEnvelope; null on messages that carry Base64 text in message
+    private String attachmentId; // AttachmentStore id of an encrypted attachment, or null
     private String senderId;
     private String receiverId;
     private Date timestamp; // Firestore will populate this with the server's time
@@ -19,6 +24,15 @@ public class ChatMessage {
     }
 
     // --- Getters and Setters ---
+    @DocumentId // Filled in by Firestore when the document is read
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -27,6 +41,22 @@ public class ChatMessage {
         this.message = message;
     }
 
+    public Blob getPayload() {
+        return payload;
+    }
+
+    public void setPayload(Blob payload) {
+        this.payload = payload;
+    }
+
+    public String getAttachmentId() {
+        return attachmentId;
+    }
+
+    public void setAttachmentId(String attachmentId) {
+        this.attachmentId = attachmentId;
+    }
+
     public String getSenderId() {
         return senderId;
     }
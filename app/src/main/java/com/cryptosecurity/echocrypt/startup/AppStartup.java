@@ -0,0 +1,102 @@
+package com.cryptosecurity.echocrypt.startup;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.cryptosecurity.echocrypt.contacts.PublicKeyDirectory;
+import com.cryptosecurity.echocrypt.contacts.UserDirectory;
+import com.cryptosecurity.echocrypt.crypto.KeyManager;
+import com.cryptosecurity.echocrypt.crypto.SessionKeyCache;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The app's cold-start work, run in parallel while the splash screen is up.
+ *
+ * Routing only needs the restored auth state and the Firestore client, so those are the
+ * critical phases. Caching the Keystore key handles in KeyManager and prefetching the first
+ * page of the contact directory carry on in the background, and the contact list picks the
+ * page up through takeDirectoryPrefetch() instead of issuing the same query again.
+ * Timings are logged when the critical phases finish and again when everything has.
+ */
+public final class AppStartup {
+
+    private static final String TAG = "AppStartup";
+    private static final int PHASES = 4;
+
+    private static StartupOrchestrator orchestrator; // guarded by AppStartup.class
+    private static volatile Task<QuerySnapshot> directoryPrefetch;
+
+    private AppStartup() {}
+
+    /**
+     * Starts the startup phases once per process; later calls return the same run.
+     */
+    public static synchronized StartupOrchestrator start(Context context) {
+        if (orchestrator != null) return orchestrator;
+        Context appContext = context.getApplicationContext();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(PHASES, PHASES, 1, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "AppStartup");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true); // the threads go away once startup is over
+
+        orchestrator = new StartupOrchestrator(executor)
+                // Reads the persisted session; routing depends on it
+                .add("auth", true, () -> FirebaseAuth.getInstance().getCurrentUser())
+                // Creates the client and opens its offline cache, which the first screen queries
+                .add("firestore", true, () -> Tasks.await(FirebaseFirestore.getInstance()
+                        .collection("users").limit(1).get(Source.CACHE)))
+                // Loads the Keystore and caches the private key handle before the first chat needs it
+                .add("keystore", false, () -> {
+                    if (KeyManager.getInstance().getPrivateKey() == null) {
+                        throw new IllegalStateException("No private key");
+                    }
+                })
+                .add("contacts", false, () -> prefetchContacts(appContext));
+        orchestrator.criticalDone().thenAccept(report -> Log.i(TAG, "Ready to route: " + report.format()));
+        orchestrator.allDone().thenAccept(report -> Log.i(TAG, "Startup finished: " + report.format()));
+        orchestrator.start();
+        return orchestrator;
+    }
+
+    /**
+     * @return The first page of the contact directory fetched during startup, possibly still in
+     *         flight, or null if there is none. Handed out once.
+     */
+    public static synchronized Task<QuerySnapshot> takeDirectoryPrefetch() {
+        Task<QuerySnapshot> prefetch = directoryPrefetch;
+        directoryPrefetch = null;
+        if (prefetch != null && prefetch.isComplete() && !prefetch.isSuccessful()) {
+            return null; // let the directory query again
+        }
+        return prefetch;
+    }
+
+    /**
+     * Drops a prefetched page, e.g. on logout, so the next user does not see it.
+     */
+    public static void clear() {
+        directoryPrefetch = null;
+    }
+
+    private static void prefetchContacts(Context context) throws Exception {
+        // The disk tiers are what the contact list and chats read keys from first
+        PublicKeyDirectory.getInstance().enableDiskTier(context);
+        SessionKeyCache.getInstance().enableDiskTier(context);
+        if (FirebaseAuth.getInstance().getCurrentUser() == null) return;
+        Task<QuerySnapshot> page = UserDirectory.firstBrowsePage(FirebaseFirestore.getInstance().collection("users")).get();
+        directoryPrefetch = page;
+        Tasks.await(page);
+    }
+}
@@ -0,0 +1,46 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the file-backed AttachmentStore.
+ */
+public class AttachmentStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    public void putThenGet_roundTripsAndStoresOnlyCiphertext() throws Exception {
+        File directory = folder.newFolder("attachments");
+        AttachmentStore store = new AttachmentStore(directory);
+        byte[] plain = "%PDF-1.7 quarterly report".getBytes("UTF-8");
+
+        String attachmentId = store.put(new ByteArrayInputStream(plain), key);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        store.get(attachmentId, key, out);
+
+        assertArrayEquals(plain, out.toByteArray());
+        assertTrue(store.getEncryptedSize(attachmentId) > plain.length);
+        assertArrayEquals(new String[]{attachmentId}, directory.list());
+        assertTrue(store.delete(attachmentId));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void idsThatAreNotUuids_areRejected() throws Exception {
+        new AttachmentStore(folder.newFolder()).get("../messages.db", key, new ByteArrayOutputStream());
+    }
+}
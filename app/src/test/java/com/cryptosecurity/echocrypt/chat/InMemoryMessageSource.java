@@ -0,0 +1,108 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory stand-in for a chat room's Firestore messages collection.
+ * Counts every document it hands out so tests can assert on read costs.
+ */
+class InMemoryMessageSource implements RemoteMessageSource {
+
+    private static final Comparator<ChatMessage> OLDEST_FIRST = Comparator.comparing(
+            (ChatMessage m) -> m.getTimestamp() == null ? Long.MAX_VALUE : m.getTimestamp().getTime());
+
+    private final Map<String, ChatMessage> documents = new LinkedHashMap<>();
+    private Listener liveListener;
+    private long liveSince = Long.MIN_VALUE;
+    int documentReads;
+
+    /**
+     * Writes a document, notifying the live stream if it matches.
+     */
+    void put(String docId, String ciphertext, Long timestamp) {
+        ChatMessage message = new ChatMessage(ciphertext, "sender", "receiver");
+        message.setId(docId);
+        message.setTimestamp(timestamp != null ? new Date(timestamp) : null);
+        documents.put(docId, message);
+        if (liveListener != null && (timestamp == null || timestamp >= liveSince)) {
+            liveListener.onRemoteChanges(read(Collections.singletonList(message)), new ArrayList<>());
+        }
+    }
+
+    void delete(String docId) {
+        documents.remove(docId);
+        if (liveListener != null) {
+            liveListener.onRemoteChanges(new ArrayList<>(), Collections.singletonList(docId));
+        }
+    }
+
+    boolean isListening() {
+        return liveListener != null;
+    }
+
+    @Override
+    public void listenNewest(int limit, Listener listener) {
+        List<ChatMessage> all = sorted();
+        List<ChatMessage> newest = all.subList(Math.max(0, all.size() - limit), all.size());
+        liveListener = listener;
+        liveSince = newest.isEmpty() || newest.get(0).getTimestamp() == null
+                ? Long.MIN_VALUE : newest.get(0).getTimestamp().getTime();
+        listener.onRemoteChanges(read(newest), new ArrayList<>());
+    }
+
+    @Override
+    public void listenSince(long sinceTimestamp, Listener listener) {
+        List<ChatMessage> matching = new ArrayList<>();
+        for (ChatMessage message : sorted()) {
+            if (message.getTimestamp() == null || message.getTimestamp().getTime() >= sinceTimestamp) {
+                matching.add(message);
+            }
+        }
+        liveListener = listener;
+        liveSince = sinceTimestamp;
+        listener.onRemoteChanges(read(matching), new ArrayList<>());
+    }
+
+    @Override
+    public void fetchOlder(long beforeTimestamp, int limit, Listener listener) {
+        List<ChatMessage> older = new ArrayList<>();
+        List<ChatMessage> all = sorted();
+        Collections.reverse(all);
+        for (ChatMessage message : all) {
+            if (message.getTimestamp() != null && message.getTimestamp().getTime() <= beforeTimestamp) {
+                older.add(message);
+                if (older.size() == limit) break;
+            }
+        }
+        listener.onRemoteChanges(read(older), new ArrayList<>());
+    }
+
+    @Override
+    public void stop() {
+        liveListener = null;
+    }
+
+    private List<ChatMessage> sorted() {
+        List<ChatMessage> all = new ArrayList<>(documents.values());
+        all.sort(OLDEST_FIRST);
+        return all;
+    }
+
+    // Like a snapshot, every delivery is a fresh deserialized copy
+    private List<ChatMessage> read(List<ChatMessage> messages) {
+        documentReads += messages.size();
+        List<ChatMessage> copies = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            copies.add(InMemoryMessageStore.copy(message));
+        }
+        return copies;
+    }
+}
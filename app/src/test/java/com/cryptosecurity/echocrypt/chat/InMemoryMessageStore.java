@@ -0,0 +1,117 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * MessageStore kept in memory, standing in for SqliteMessageStore on the JVM.
+ * Messages are copied in and out, just like rows in a database.
+ */
+class InMemoryMessageStore implements MessageStore {
+
+    // Oldest first, pending (null timestamp) last
+    private static final Comparator<ChatMessage> ORDER = Comparator.comparing(
+            (ChatMessage m) -> m.getTimestamp() == null ? Long.MAX_VALUE : m.getTimestamp().getTime());
+
+    private final Map<String, Map<String, ChatMessage>> rooms = new HashMap<>();
+    private final Map<String, Long> watermarks = new HashMap<>();
+
+    @Override
+    public List<ChatMessage> loadNewest(String chatRoomId, int limit) {
+        List<ChatMessage> all = sorted(chatRoomId);
+        return copies(all.subList(Math.max(0, all.size() - limit), all.size()));
+    }
+
+    @Override
+    public List<ChatMessage> loadOlder(String chatRoomId, long beforeTimestamp, int limit) {
+        List<ChatMessage> older = new ArrayList<>();
+        for (ChatMessage message : sorted(chatRoomId)) {
+            if (message.getTimestamp() != null && message.getTimestamp().getTime() < beforeTimestamp) {
+                older.add(message);
+            }
+        }
+        return copies(older.subList(Math.max(0, older.size() - limit), older.size()));
+    }
+
+    @Override
+    public Map<String, ChatMessage> findByIds(String chatRoomId, Collection<String> docIds) {
+        Map<String, ChatMessage> found = new HashMap<>();
+        for (String docId : docIds) {
+            ChatMessage message = room(chatRoomId).get(docId);
+            if (message != null) found.put(docId, copy(message));
+        }
+        return found;
+    }
+
+    @Override
+    public void upsert(String chatRoomId, List<ChatMessage> messages) {
+        for (ChatMessage message : messages) {
+            room(chatRoomId).put(message.getId(), copy(message));
+        }
+    }
+
+    @Override
+    public void remove(String chatRoomId, Collection<String> docIds) {
+        for (String docId : docIds) {
+            room(chatRoomId).remove(docId);
+        }
+    }
+
+    @Override
+    public long getWatermark(String chatRoomId) {
+        Long watermark = watermarks.get(chatRoomId);
+        return watermark != null ? watermark : 0;
+    }
+
+    @Override
+    public void setWatermark(String chatRoomId, long watermark) {
+        watermarks.put(chatRoomId, watermark);
+    }
+
+    @Override
+    public int compact(String chatRoomId, int keepNewest) {
+        List<ChatMessage> all = sorted(chatRoomId);
+        int excess = Math.max(0, all.size() - keepNewest);
+        for (ChatMessage message : all.subList(0, excess)) {
+            room(chatRoomId).remove(message.getId());
+        }
+        return excess;
+    }
+
+    int size(String chatRoomId) {
+        return room(chatRoomId).size();
+    }
+
+    private Map<String, ChatMessage> room(String chatRoomId) {
+        return rooms.computeIfAbsent(chatRoomId, id -> new HashMap<>());
+    }
+
+    private List<ChatMessage> sorted(String chatRoomId) {
+        List<ChatMessage> all = new ArrayList<>(room(chatRoomId).values());
+        all.sort(ORDER);
+        return all;
+    }
+
+    private static List<ChatMessage> copies(List<ChatMessage> messages) {
+        List<ChatMessage> copies = new ArrayList<>(messages.size());
+        for (ChatMessage message : messages) {
+            copies.add(copy(message));
+        }
+        return copies;
+    }
+
+    static ChatMessage copy(ChatMessage message) {
+        ChatMessage copy = new ChatMessage(message.getMessage(), message.getSenderId(), message.getReceiverId());
+        copy.setId(message.getId());
+        copy.setTimestamp(message.getTimestamp());
+        copy.setPayload(message.getPayload());
+        copy.setAttachmentId(message.getAttachmentId());
+        return copy;
+    }
+}
@@ -0,0 +1,44 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OutboxStore kept in memory, standing in for SqliteOutboxStore on the JVM.
+ */
+class InMemoryOutboxStore implements OutboxStore {
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(); // by doc id, in enqueue order
+
+    @Override
+    public void enqueue(String chatRoomId, ChatMessage message) {
+        entries.put(message.getId(), new Entry(chatRoomId, message));
+    }
+
+    @Override
+    public List<Entry> peek(int limit) {
+        List<Entry> oldest = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (oldest.size() == limit) break;
+            oldest.add(entry);
+        }
+        return oldest;
+    }
+
+    @Override
+    public void remove(Collection<String> docIds) {
+        for (String docId : docIds) {
+            entries.remove(docId);
+        }
+    }
+
+    @Override
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,212 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MessageOutbox with an in-memory store, a scripted writer and a virtual clock.
+ */
+public class MessageOutboxTest {
+
+    private static final String ROOM = "alice_bob";
+
+    private InMemoryOutboxStore store;
+    private ScriptedWriter writer;
+    private VirtualScheduler scheduler;
+    private MessageOutbox outbox;
+    private List<String> rejected;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryOutboxStore();
+        writer = new ScriptedWriter();
+        scheduler = new VirtualScheduler();
+        outbox = new MessageOutbox(store, writer, scheduler);
+        rejected = new ArrayList<>();
+        outbox.addListener((roomId, docId, e) -> rejected.add(docId));
+    }
+
+    @Test
+    public void burst_isCoalescedIntoOneBatch_inSendOrder() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(outbox.send(ROOM, message()));
+        }
+        scheduler.runAll();
+
+        assertEquals(1, writer.commits.size());
+        assertEquals(ids, writer.commits.get(0));
+        assertEquals(List.of(false), writer.mayExist);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void sendsWhileInFlight_goOutInTheNextBatch() {
+        writer.holdNext = true;
+        outbox.send(ROOM, message());
+        scheduler.runAll();
+        for (int i = 0; i < 5; i++) {
+            outbox.send(ROOM, message());
+        }
+        scheduler.runAll();
+        assertEquals(1, writer.commits.size());
+
+        writer.completeHeld(true, false);
+        scheduler.runAll();
+
+        assertEquals(2, writer.commits.size());
+        assertEquals(5, writer.commits.get(1).size());
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void largeBacklog_isSplitIntoBatchesOfMaxSize() {
+        for (int i = 0; i < MessageOutbox.MAX_BATCH_SIZE * 2 + 7; i++) {
+            outbox.send(ROOM, message());
+        }
+        scheduler.runAll();
+
+        assertEquals(3, writer.commits.size());
+        assertEquals(MessageOutbox.MAX_BATCH_SIZE, writer.commits.get(0).size());
+        assertEquals(7, writer.commits.get(2).size());
+    }
+
+    @Test
+    public void transientFailure_isRetriedWithTheSameIds_afterBackoff() {
+        writer.failuresLeft = 3;
+        String id = outbox.send(ROOM, message());
+        scheduler.runAll();
+
+        assertEquals(4, writer.commits.size());
+        for (List<String> commit : writer.commits) {
+            assertEquals(List.of(id), commit);
+        }
+        // The failed attempts may have reached the server, so every retry must not overwrite
+        assertEquals(List.of(false, true, true, true), writer.mayExist);
+        assertTrue(scheduler.now >= (MessageOutbox.INITIAL_BACKOFF_MS / 2) * (1 + 2 + 4));
+        assertEquals(0, store.size());
+        assertTrue(rejected.isEmpty());
+    }
+
+    @Test
+    public void backoff_growsAndIsCapped() {
+        for (int failures = 1; failures < 40; failures++) {
+            long ceiling = Math.min(MessageOutbox.MAX_BACKOFF_MS, MessageOutbox.INITIAL_BACKOFF_MS << Math.min(failures - 1, 20));
+            long delay = outbox.backoffMs(failures);
+            assertTrue(delay >= ceiling / 2 && delay <= ceiling);
+        }
+    }
+
+    @Test
+    public void leftoversFromAPreviousRun_areSentOnResume() {
+        for (int i = 0; i < 3; i++) {
+            ChatMessage message = message();
+            message.setId("left" + i);
+            store.enqueue(ROOM, message);
+        }
+        outbox.resume();
+        scheduler.runAll();
+
+        assertEquals(List.of("left0", "left1", "left2"), writer.commits.get(0));
+        assertEquals(List.of(true), writer.mayExist);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void permanentRejection_dropsOnlyTheOffendingMessage() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ids.add(outbox.send(ROOM, message()));
+        }
+        writer.poison.add(ids.get(2));
+        scheduler.runAll();
+
+        assertEquals(List.of(ids.get(2)), rejected);
+        assertEquals(0, store.size());
+        Set<String> delivered = new HashSet<>(writer.delivered);
+        assertEquals(new HashSet<>(List.of(ids.get(0), ids.get(1), ids.get(3))), delivered);
+    }
+
+    private static ChatMessage message() {
+        return new ChatMessage(null, "alice", "bob");
+    }
+
+    // Single-threaded scheduler on a virtual clock; tasks due at the same time run in submission order
+    private static final class VirtualScheduler implements MessageOutbox.Scheduler {
+        private final PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) ->
+                a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        long now;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(task);
+            queue.add(new long[]{now + delayMs, tasks.size() - 1});
+        }
+
+        void runAll() {
+            while (!queue.isEmpty()) {
+                long[] next = queue.poll();
+                now = Math.max(now, next[0]);
+                tasks.get((int) next[1]).run();
+            }
+        }
+    }
+
+    private static final class ScriptedWriter implements RemoteMessageWriter {
+        final List<List<String>> commits = new ArrayList<>();
+        final List<Boolean> mayExist = new ArrayList<>();
+        final List<String> delivered = new ArrayList<>();
+        final Set<String> poison = new HashSet<>();
+        int failuresLeft;
+        boolean holdNext;
+        private List<String> held;
+        private Callback heldCallback;
+
+        @Override
+        public void commit(List<OutboxStore.Entry> entries, boolean mayExist, Callback callback) {
+            List<String> ids = new ArrayList<>();
+            for (OutboxStore.Entry entry : entries) ids.add(entry.message.getId());
+            commits.add(ids);
+            this.mayExist.add(mayExist);
+            if (holdNext) {
+                holdNext = false;
+                held = ids;
+                heldCallback = callback;
+                return;
+            }
+            for (String id : ids) {
+                if (poison.contains(id)) {
+                    callback.onFailed(new Exception("rejected"), true);
+                    return;
+                }
+            }
+            if (failuresLeft > 0) {
+                failuresLeft--;
+                callback.onFailed(new Exception("unavailable"), false);
+                return;
+            }
+            delivered.addAll(ids);
+            callback.onCommitted();
+        }
+
+        void completeHeld(boolean success, boolean permanent) {
+            if (success) {
+                delivered.addAll(held);
+                heldCallback.onCommitted();
+            } else {
+                heldCallback.onFailed(new Exception("failed"), permanent);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.models.ChatMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MessageSyncEngine against in-memory stand-ins for SQLite and Firestore.
+ */
+public class MessageSyncEngineTest {
+
+    private static final String ROOM = "alice_bob";
+    private static final int PAGE = MessageSyncEngine.PAGE_SIZE;
+
+    private InMemoryMessageStore store;
+    private InMemoryMessageSource remote;
+    private List<String> delivered;
+    private List<String> removed;
+
+    @Before
+    public void setUp() {
+        store = new InMemoryMessageStore();
+        remote = new InMemoryMessageSource();
+        delivered = new ArrayList<>();
+        removed = new ArrayList<>();
+    }
+
+    private MessageSyncEngine newEngine() {
+        return new MessageSyncEngine(ROOM, store, remote, Runnable::run, (upserts, removedIds) -> {
+            for (ChatMessage message : upserts) delivered.add(message.getId());
+            removed.addAll(removedIds);
+        });
+    }
+
+    private void seedRemote(int count) {
+        for (int i = 0; i < count; i++) {
+            remote.put("m" + i, "cipher" + i, 1000L + i);
+        }
+    }
+
+    @Test
+    public void firstOpen_readsOnlyNewestPage_andPersistsIt() {
+        seedRemote(500);
+
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+
+        assertEquals(PAGE, remote.documentReads);
+        assertEquals(PAGE, delivered.size());
+        assertEquals(PAGE, store.size(ROOM));
+        assertEquals(1499L, engine.getWatermark());
+        assertEquals(1499L, store.getWatermark(ROOM));
+    }
+
+    @Test
+    public void reopen_rendersFromStore_andOnlyFetchesNewerThanWatermark() {
+        seedRemote(200);
+        MessageSyncEngine first = newEngine();
+        first.start();
+        first.stop();
+
+        remote.put("new1", "c-new1", 5000L);
+        remote.put("new2", "c-new2", 5001L);
+        remote.documentReads = 0;
+        delivered.clear();
+
+        newEngine().start();
+
+        // The watermark document is re-read once (inclusive cursor) but deduplicated
+        assertEquals(3, remote.documentReads);
+        assertEquals(PAGE + 2, delivered.size());
+        assertTrue(delivered.containsAll(Arrays.asList("new1", "new2")));
+        assertEquals(5001L, store.getWatermark(ROOM));
+    }
+
+    @Test
+    public void unchangedRedelivery_isDeduplicated_butChangesPassThrough() {
+        seedRemote(3);
+        newEngine().start();
+        delivered.clear();
+
+        remote.put("m1", "cipher1", 1001L); // identical
+        assertTrue(delivered.isEmpty());
+
+        remote.put("m1", "edited", 1001L); // changed ciphertext
+        assertEquals(Arrays.asList("m1"), delivered);
+    }
+
+    @Test
+    public void pendingMessage_isUpdatedWhenServerTimestampArrives() {
+        seedRemote(3);
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+        delivered.clear();
+
+        remote.put("pending", "c-pending", null);
+        remote.put("pending", "c-pending", 2000L);
+
+        assertEquals(Arrays.asList("pending", "pending"), delivered);
+        assertEquals(2000L, engine.getWatermark());
+    }
+
+    @Test
+    public void removals_areForwardedAndDeletedFromStore() {
+        seedRemote(3);
+        newEngine().start();
+
+        remote.delete("m2");
+
+        assertEquals(Arrays.asList("m2"), removed);
+        assertEquals(2, store.size(ROOM));
+    }
+
+    @Test
+    public void loadOlder_prefersStore_thenFallsBackToRemote() {
+        // Remote has 4 pages; the store already holds the newest 3 from an earlier session
+        seedRemote(4 * PAGE);
+        List<ChatMessage> synced = new ArrayList<>();
+        for (int i = PAGE; i < 4 * PAGE; i++) {
+            synced.add(message("m" + i, "cipher" + i, 1000L + i));
+        }
+        store.upsert(ROOM, synced);
+        store.setWatermark(ROOM, 1000L + 4 * PAGE - 1);
+
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+        int readsAfterStart = remote.documentReads;
+
+        engine.loadOlder();
+        engine.loadOlder();
+        assertEquals(readsAfterStart, remote.documentReads);
+        assertEquals(3 * PAGE, delivered.size());
+
+        engine.loadOlder(); // store exhausted, goes remote
+        assertTrue(remote.documentReads > readsAfterStart);
+        assertEquals(4 * PAGE, store.size(ROOM));
+        assertTrue(delivered.contains("m0"));
+    }
+
+    @Test
+    public void loadOlder_stopsWhenHistoryIsExhausted() {
+        seedRemote(PAGE + 10);
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+
+        engine.loadOlder();
+        assertFalse(engine.hasMoreOlder());
+        int reads = remote.documentReads;
+
+        engine.loadOlder();
+        assertEquals(reads, remote.documentReads);
+        assertEquals(PAGE + 10, store.size(ROOM));
+    }
+
+    @Test
+    public void stop_detachesListener_andCompactsStore() {
+        store.upsert(ROOM, manyMessages(MessageSyncEngine.MAX_STORED_MESSAGES + 100));
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+        assertTrue(remote.isListening());
+
+        engine.stop();
+
+        assertFalse(remote.isListening());
+        assertEquals(MessageSyncEngine.MAX_STORED_MESSAGES, store.size(ROOM));
+        // The oldest messages are the ones compacted away
+        assertTrue(store.findByIds(ROOM, Arrays.asList("s0")).isEmpty());
+    }
+
+    @Test
+    public void pause_detachesListener_andResumeReadsOnlyWhatChanged() {
+        seedRemote(200);
+        MessageSyncEngine engine = newEngine();
+        engine.start();
+        engine.pause();
+        assertFalse(remote.isListening());
+
+        remote.put("away1", "c-away1", 5000L);
+        remote.put("away2", "c-away2", 5001L);
+        assertFalse(delivered.contains("away1"));
+        remote.documentReads = 0;
+
+        engine.resume();
+
+        assertTrue(remote.isListening());
+        // Both new messages plus the re-read watermark document, not the whole window again
+        assertEquals(3, remote.documentReads);
+        assertTrue(delivered.containsAll(Arrays.asList("away1", "away2")));
+        assertEquals(5001L, engine.getWatermark());
+    }
+
+    @Test
+    public void pauseBeforeStart_rendersStoreButDefersListener() {
+        store.upsert(ROOM, manyMessages(10));
+        seedRemote(10);
+        MessageSyncEngine engine = newEngine();
+
+        engine.pause();
+        engine.start();
+
+        assertEquals(10, delivered.size());
+        assertFalse(remote.isListening());
+        assertEquals(0, remote.documentReads);
+
+        engine.resume();
+        assertTrue(remote.isListening());
+    }
+
+    private static List<ChatMessage> manyMessages(int count) {
+        List<ChatMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("s" + i, "c" + i, i));
+        }
+        return messages;
+    }
+
+    private static ChatMessage message(String id, String ciphertext, long timestamp) {
+        ChatMessage message = new ChatMessage(ciphertext, "sender", "receiver");
+        message.setId(id);
+        message.setTimestamp(new Date(timestamp));
+        return message;
+    }
+}
@@ -0,0 +1,119 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ReadReceiptWriter's coalescing and ReadReceiptWatcher's reduction, on a virtual clock.
+ */
+public class ReadReceiptWriterTest {
+
+    private static final String ROOM = "alice_bob";
+    private static final long INTERVAL = ReadReceiptWriter.FLUSH_INTERVAL_MS;
+
+    private VirtualScheduler scheduler;
+    private List<String> writes;
+    private ReadReceiptWriter writer;
+
+    @Before
+    public void setUp() {
+        scheduler = new VirtualScheduler();
+        writes = new ArrayList<>();
+        writer = new ReadReceiptWriter((roomId, userId, timestamp) -> writes.add(roomId + " " + userId + " " + timestamp),
+                scheduler);
+    }
+
+    @Test
+    public void readingABacklog_costsOneWritePerInterval() {
+        for (long t = 1; t <= 500; t++) {
+            writer.markRead(ROOM, "bob", t);
+        }
+        scheduler.runUntil(INTERVAL - 1);
+        assertTrue(writes.isEmpty());
+
+        scheduler.runUntil(INTERVAL);
+        assertEquals(Arrays.asList(ROOM + " bob 500"), writes);
+    }
+
+    @Test
+    public void marksNeverMoveBackwards_andRepeatsAreDropped() {
+        writer.markRead(ROOM, "bob", 100);
+        writer.markRead(ROOM, "bob", 50);
+        scheduler.runUntil(INTERVAL);
+
+        writer.markRead(ROOM, "bob", 100);
+        writer.markRead(ROOM, "bob", 80);
+        scheduler.runUntil(3 * INTERVAL);
+
+        assertEquals(Arrays.asList(ROOM + " bob 100"), writes);
+    }
+
+    @Test
+    public void flush_writesThePendingMarkImmediately_once() {
+        writer.markRead(ROOM, "bob", 100);
+        writer.flush(ROOM);
+        scheduler.runUntil(0);
+        assertEquals(Arrays.asList(ROOM + " bob 100"), writes);
+
+        writer.flush(ROOM);
+        scheduler.runUntil(2 * INTERVAL); // the interval flush finds nothing left
+        assertEquals(1, writes.size());
+    }
+
+    @Test
+    public void chatsAreCoalescedIndependently() {
+        writer.markRead(ROOM, "bob", 100);
+        writer.markRead("group1", "bob", 7);
+        scheduler.runUntil(INTERVAL);
+
+        assertEquals(2, writes.size());
+        assertTrue(writes.contains("group1 bob 7"));
+    }
+
+    @Test
+    public void readByAll_isTheSlowestReader() {
+        Map<String, Object> readUpTo = new HashMap<>();
+        readUpTo.put("alice", 300L);
+        readUpTo.put("bob", 200L);
+        readUpTo.put("carol", 250L);
+
+        assertEquals(200L, ReadReceiptWatcher.readByAll(readUpTo, Arrays.asList("bob", "carol")));
+        assertEquals(250L, ReadReceiptWatcher.readByAll(readUpTo, Collections.singletonList("carol")));
+        // Someone who never opened the chat has read nothing
+        assertEquals(0L, ReadReceiptWatcher.readByAll(readUpTo, Arrays.asList("carol", "dave")));
+        assertEquals(0L, ReadReceiptWatcher.readByAll(null, Collections.singletonList("bob")));
+        assertEquals(0L, ReadReceiptWatcher.readByAll(readUpTo, Collections.emptyList()));
+    }
+
+    private static final class VirtualScheduler implements ReadReceiptWriter.Scheduler {
+        private final PriorityQueue<long[]> queue = new PriorityQueue<>((a, b) ->
+                a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        private final List<Runnable> tasks = new ArrayList<>();
+        long now;
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            tasks.add(task);
+            queue.add(new long[]{now + delayMs, tasks.size() - 1});
+        }
+
+        void runUntil(long time) {
+            while (!queue.isEmpty() && queue.peek()[0] <= time) {
+                long[] next = queue.poll();
+                now = Math.max(now, next[0]);
+                tasks.get((int) next[1]).run();
+            }
+            now = Math.max(now, time);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Merging snapshot changes into the chat history at different history lengths: the
+ * incremental MessageTimeline against the old "copy map values and Collections.sort" rebuild,
+ * both for one incoming message and for loading the whole history from a first snapshot.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TimelineBenchmark {
+
+    // Pending (null) timestamps last, as in the chat screen
+    private static final Comparator<Item> BY_TIMESTAMP = (o1, o2) -> {
+        if (o1.timestamp == null) return 1;
+        if (o2.timestamp == null) return -1;
+        return o1.timestamp.compareTo(o2.timestamp);
+    };
+
+    static final class Item {
+        final Date timestamp;
+
+        Item(Date timestamp) {
+            this.timestamp = timestamp;
+        }
+    }
+
+    @Param({"100", "1000", "10000", "50000"})
+    public int history;
+
+    private final Random random = new Random(1);
+    private List<String> snapshotIds;
+    private List<Item> snapshotItems;
+    private MessageTimeline<Item> timeline;
+    private Map<String, Item> messageMap;
+    private List<Item> messageList;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        snapshotIds = new ArrayList<>(history);
+        snapshotItems = new ArrayList<>(history);
+        timeline = new MessageTimeline<>(item -> item.timestamp);
+        messageMap = new HashMap<>();
+        for (int i = 0; i < history; i++) {
+            String id = "h" + i;
+            Item item = new Item(new Date(random.nextInt(Integer.MAX_VALUE)));
+            snapshotIds.add(id);
+            snapshotItems.add(item);
+            timeline.upsert(id, item);
+            messageMap.put(id, item);
+        }
+        messageList = new ArrayList<>(messageMap.values());
+    }
+
+    /**
+     * One sent message: added with a pending timestamp, then moved once the server stamps it.
+     * Removed again afterwards so the history length stays fixed across invocations.
+     */
+    @Benchmark
+    public int incrementalUpsert() {
+        timeline.upsert("n", new Item(null));
+        timeline.upsert("n", new Item(new Date(random.nextInt(Integer.MAX_VALUE))));
+        int index = timeline.indexOfId("n");
+        timeline.removeById("n");
+        return index;
+    }
+
+    @Benchmark
+    public int rebuildAndSort() {
+        messageMap.put("n", new Item(null));
+        rebuild();
+        messageMap.put("n", new Item(new Date(random.nextInt(Integer.MAX_VALUE))));
+        rebuild();
+        messageMap.remove("n");
+        return messageList.size();
+    }
+
+    private void rebuild() {
+        messageList.clear();
+        messageList.addAll(messageMap.values());
+        Collections.sort(messageList, BY_TIMESTAMP);
+    }
+
+    @Benchmark
+    public MessageTimeline<Item> initialLoadTimeline() {
+        MessageTimeline<Item> loaded = new MessageTimeline<>(item -> item.timestamp);
+        for (int i = 0; i < history; i++) {
+            loaded.upsert(snapshotIds.get(i), snapshotItems.get(i));
+        }
+        return loaded;
+    }
+
+    @Benchmark
+    public List<Item> initialLoadSort() {
+        List<Item> loaded = new ArrayList<>(snapshotItems);
+        Collections.sort(loaded, BY_TIMESTAMP);
+        return loaded;
+    }
+}
@@ -0,0 +1,78 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Decrypting a history backfill of chat-sized envelopes: one thread, as the pipeline used to,
+ * against BulkDecryptor on a pool with one worker per core.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BulkDecryptBenchmark {
+
+    @Param({"1000", "10000", "50000"})
+    public int messages;
+
+    private SecretKey key;
+    private List<byte[]> envelopes;
+    private ForkJoinPool pool;
+    private BulkDecryptor sequential;
+    private BulkDecryptor parallel;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        CryptoMetrics.setEnabled(false);
+        Random random = new Random(7);
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        envelopes = new ArrayList<>(messages);
+        for (int i = 0; i < messages; i++) {
+            // Typical chat lengths, mostly below the compression threshold
+            StringBuilder text = new StringBuilder();
+            int length = 8 + random.nextInt(160);
+            while (text.length() < length) text.append("msg").append(i).append(' ');
+            envelopes.add(MessageEnvelope.sealString(key, text.toString()));
+        }
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        sequential = new BulkDecryptor(pool, Integer.MAX_VALUE);
+        parallel = new BulkDecryptor(pool);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public List<String> sequential() {
+        return sequential.map(envelopes, envelope -> EncryptionHelper.decryptEnvelope(envelope, key));
+    }
+
+    @Benchmark
+    public List<String> forkJoin() {
+        return parallel.map(envelopes, envelope -> EncryptionHelper.decryptEnvelope(envelope, key));
+    }
+}
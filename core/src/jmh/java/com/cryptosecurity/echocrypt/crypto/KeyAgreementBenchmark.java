@@ -0,0 +1,70 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Cost of starting a secure session: parsing the peer's published key, fingerprinting it
+ * and deriving the shared secret over secp256r1, the curve KeyManager uses.
+ * Keys are generated in software here; the device's hardware-backed Keystore is slower
+ * still, so these numbers are a lower bound.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyAgreementBenchmark {
+
+    private KeyPair mine;
+    private PublicKey theirs;
+    private String theirsEncoded;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        CryptoMetrics.setEnabled(false);
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        mine = generator.generateKeyPair();
+        theirs = generator.generateKeyPair().getPublic();
+        // Same layout as the publicKey field in Firestore
+        theirsEncoded = Base64.getMimeEncoder(76, new byte[]{'\n'}).encodeToString(theirs.getEncoded());
+    }
+
+    @Benchmark
+    public SecretKey deriveSharedSecret() {
+        return EncryptionHelper.generateSharedSecret(mine.getPrivate(), theirs);
+    }
+
+    @Benchmark
+    public PublicKey parsePublicKey() throws GeneralSecurityException {
+        return EncryptionHelper.getPublicKeyFromString(theirsEncoded);
+    }
+
+    @Benchmark
+    public String fingerprint() {
+        return EncryptionHelper.getKeyFingerprint(theirsEncoded);
+    }
+
+    @Benchmark
+    public SecretKey parseAndDerive() throws GeneralSecurityException {
+        return EncryptionHelper.generateSharedSecret(mine.getPrivate(),
+                EncryptionHelper.getPublicKeyFromString(theirsEncoded));
+    }
+}
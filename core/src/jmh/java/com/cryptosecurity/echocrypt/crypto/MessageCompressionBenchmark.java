@@ -0,0 +1,164 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * The size/CPU trade-off of compressing before encryption, across the kinds of text people
+ * actually send: MessageEnvelope.sealString, which deflates above the threshold, against
+ * sealing the raw UTF-8 bytes. Each operation seals or opens one message of the corpus.
+ * The seal benchmarks also count plaintext and envelope bytes as secondary results; their
+ * ratio is the size saved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCompressionBenchmark {
+
+    private static final int MESSAGES = 512; // a power of two, so the next index is a mask
+
+    private static final String[] WORDS = {
+            "the", "message", "is", "on", "its", "way", "see", "you", "at", "lunch", "tomorrow",
+            "did", "we", "ship", "build", "fails", "again", "after", "merge", "please", "review",
+            "thanks", "sounds", "good", "meeting", "moved", "to", "three", "o'clock", "ok"
+    };
+
+    @Param({"shortChat", "paragraphs", "pastedLogs", "codeSnippets", "base64Tokens"})
+    public String corpus;
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+    private String[] messages;
+    private byte[][] compressedEnvelopes;
+    private byte[][] rawEnvelopes;
+    private int next;
+
+    /**
+     * Bytes going into and coming out of the seal benchmarks.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Sizes {
+        public long plainBytes;
+        public long envelopeBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            plainBytes = 0;
+            envelopeBytes = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        Random random = new Random(42);
+        messages = new String[MESSAGES];
+        compressedEnvelopes = new byte[MESSAGES][];
+        rawEnvelopes = new byte[MESSAGES][];
+        for (int i = 0; i < MESSAGES; i++) {
+            messages[i] = generate(corpus, random);
+            compressedEnvelopes[i] = MessageEnvelope.sealString(key, messages[i]);
+            rawEnvelopes[i] = sealRaw(messages[i]);
+        }
+    }
+
+    @Benchmark
+    public byte[] sealCompressed(Sizes sizes) throws GeneralSecurityException {
+        String message = messages[nextIndex()];
+        byte[] envelope = MessageEnvelope.sealString(key, message);
+        sizes.plainBytes += message.length();
+        sizes.envelopeBytes += envelope.length;
+        return envelope;
+    }
+
+    @Benchmark
+    public byte[] sealUncompressed(Sizes sizes) throws GeneralSecurityException {
+        String message = messages[nextIndex()];
+        byte[] envelope = sealRaw(message);
+        sizes.plainBytes += message.length();
+        sizes.envelopeBytes += envelope.length;
+        return envelope;
+    }
+
+    @Benchmark
+    public String openCompressed() throws GeneralSecurityException, DataFormatException {
+        return MessageEnvelope.openString(key, compressedEnvelopes[nextIndex()]);
+    }
+
+    @Benchmark
+    public String openUncompressed() throws GeneralSecurityException, DataFormatException {
+        return MessageEnvelope.openString(key, rawEnvelopes[nextIndex()]);
+    }
+
+    private int nextIndex() {
+        return next++ & (MESSAGES - 1);
+    }
+
+    private byte[] sealRaw(String message) throws GeneralSecurityException {
+        byte[] plain = message.getBytes(StandardCharsets.UTF_8);
+        return MessageEnvelope.seal(key, 0, plain, 0, plain.length);
+    }
+
+    private static String generate(String corpus, Random random) {
+        switch (corpus) {
+            case "shortChat": // 10-120 chars
+                return sentence(random, 2 + random.nextInt(20));
+            case "paragraphs": // 300-1500 chars
+                return sentence(random, 60 + random.nextInt(200));
+            case "pastedLogs": { // 2-20 KB
+                StringBuilder log = new StringBuilder();
+                int lines = 30 + random.nextInt(270);
+                for (int i = 0; i < lines; i++) {
+                    log.append("2024-05-0").append(1 + random.nextInt(9)).append(" 12:")
+                            .append(10 + random.nextInt(50)).append(":").append(10 + random.nextInt(50))
+                            .append(" I/ChatActivity: onMessagesDecrypted batch=").append(random.nextInt(50))
+                            .append(" size=").append(random.nextInt(10_000)).append('\n');
+                }
+                return log.toString();
+            }
+            case "codeSnippets": { // 0.5-4 KB
+                StringBuilder code = new StringBuilder();
+                int methods = 3 + random.nextInt(20);
+                for (int i = 0; i < methods; i++) {
+                    code.append("    public void handle").append(WORDS[random.nextInt(WORDS.length)])
+                            .append("(ChatMessage message) {\n        if (message.getTimestamp() != null) {\n")
+                            .append("            timeline.upsert(message.getId(), message);\n        }\n    }\n\n");
+                }
+                return code.toString();
+            }
+            case "base64Tokens": { // 0.3-3 KB of incompressible text
+                byte[] bytes = new byte[256 + random.nextInt(2048)];
+                random.nextBytes(bytes);
+                return Base64.getEncoder().encodeToString(bytes);
+            }
+            default:
+                throw new IllegalArgumentException("Unknown corpus " + corpus);
+        }
+    }
+
+    private static String sentence(Random random, int words) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) text.append(' ');
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return text.toString();
+    }
+}
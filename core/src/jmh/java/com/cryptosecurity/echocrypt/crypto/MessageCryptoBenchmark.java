@@ -0,0 +1,107 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Message encryption and decryption at several plaintext sizes, comparing the Base64 string
+ * format stored in the legacy "encryptedMessage" field with the binary envelope format.
+ * The *Encoding benchmarks isolate the cost of the Base64 step itself.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MessageCryptoBenchmark {
+
+    private static final String[] WORDS = {
+            "the", "meeting", "moved", "to", "tomorrow", "at", "ten", "can", "you", "send",
+            "me", "the", "file", "thanks", "see", "you", "later", "ok", "sounds", "good"
+    };
+
+    @Param({"32", "256", "4096", "65536"})
+    public int size;
+
+    private SecretKey key;
+    private String plainText;
+    private String base64Message;
+    private byte[] envelope;
+    private String envelopeBase64;
+
+    @Setup(Level.Trial)
+    public void setUp() throws GeneralSecurityException {
+        CryptoMetrics.setEnabled(false); // measure the crypto, not the instrumentation
+        Random random = new Random(42);
+        byte[] keyBytes = new byte[32];
+        random.nextBytes(keyBytes);
+        key = new SecretKeySpec(keyBytes, "AES");
+        plainText = chatText(random, size);
+        base64Message = EncryptionHelper.encrypt(plainText, key);
+        envelope = MessageEnvelope.sealString(key, plainText);
+        envelopeBase64 = Base64.getEncoder().encodeToString(envelope);
+    }
+
+    // Word salad compresses roughly like real chat text, unlike random bytes
+    private static String chatText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            text.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        text.setLength(length);
+        return text.toString();
+    }
+
+    @Benchmark
+    public String encryptBase64() {
+        return EncryptionHelper.encrypt(plainText, key);
+    }
+
+    @Benchmark
+    public String decryptBase64() {
+        return EncryptionHelper.decrypt(base64Message, key);
+    }
+
+    @Benchmark
+    public byte[] sealEnvelope() throws GeneralSecurityException {
+        return MessageEnvelope.sealString(key, plainText);
+    }
+
+    @Benchmark
+    public String openEnvelope() throws GeneralSecurityException, DataFormatException {
+        return MessageEnvelope.openString(key, envelope);
+    }
+
+    @Benchmark
+    public byte[] sealUncompressed() throws GeneralSecurityException {
+        byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+        return MessageEnvelope.seal(key, 0, plain, 0, plain.length);
+    }
+
+    @Benchmark
+    public String base64Encoding() {
+        return Base64.getEncoder().encodeToString(envelope);
+    }
+
+    @Benchmark
+    public byte[] base64Decoding() {
+        return Base64.getDecoder().decode(envelopeBase64);
+    }
+}
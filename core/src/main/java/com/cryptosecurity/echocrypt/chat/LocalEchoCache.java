@@ -0,0 +1,112 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plaintext of messages this device already has in the clear, keyed by chat room and document
+ * id: the local echo of messages it sent, and messages it decrypted.
+ *
+ * Our own message comes back from the snapshot listener at least twice, once as a pending
+ * local write and again when the server timestamp lands, and a reopened chat replays its
+ * stored history. A hit here lets the chat show the text without decrypting again.
+ *
+ * A hit requires the envelope to end in the same 16-byte GCM tag as the one the plaintext came
+ * from, so the cache keeps only the tag rather than the ciphertext. A rewritten document gets a
+ * new tag and is decrypted and authenticated normally; one that keeps the old tag can at most
+ * show the text that tag originally authenticated.
+ *
+ * A hit skips decryption and with it the checks that come with the key, such as a group
+ * sender key belonging to the claimed sender. So a hit also requires the same room and the
+ * same sender the plaintext was first seen with; a document and envelope copied into another
+ * room, or relabelled with another sender, misses and goes through the normal checks.
+ *
+ * Thread-safe.
+ */
+public class LocalEchoCache {
+
+    public static final int MAX_ENTRIES = 5000; // MessageSyncEngine.MAX_STORED_MESSAGES for one chat
+    static final int TAG_LENGTH = 16;
+
+    private static volatile LocalEchoCache instance;
+
+    private final Map<String, CachedText> entries;
+
+    private static class CachedText {
+        final String senderId;
+        final byte[] tag;
+        final String plainText;
+
+        CachedText(String senderId, byte[] tag, String plainText) {
+            this.senderId = senderId;
+            this.tag = tag;
+            this.plainText = plainText;
+        }
+    }
+
+    public LocalEchoCache(int maxEntries) {
+        // Access-ordered LinkedHashMap gives us LRU eviction for free
+        entries = new LinkedHashMap<String, CachedText>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedText> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static LocalEchoCache getInstance() {
+        if (instance == null) {
+            synchronized (LocalEchoCache.class) {
+                if (instance == null) {
+                    instance = new LocalEchoCache(MAX_ENTRIES);
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Remembers the plaintext of a message we are sending or have just decrypted.
+     * @param senderId The sender the message was authenticated as.
+     * @param envelope The encrypted envelope exactly as stored in the document.
+     */
+    public void put(String chatRoomId, String docId, String senderId, byte[] envelope, String plainText) {
+        if (envelope.length < TAG_LENGTH || senderId == null) return;
+        CachedText entry = new CachedText(senderId, tagOf(envelope), plainText);
+        synchronized (this) {
+            entries.put(keyOf(chatRoomId, docId), entry);
+        }
+    }
+
+    /**
+     * @return The plaintext if docId was cached in this room, from this sender and with this
+     *         envelope, or null.
+     */
+    public String get(String chatRoomId, String docId, String senderId, byte[] envelope) {
+        if (envelope.length < TAG_LENGTH) return null;
+        CachedText entry;
+        synchronized (this) {
+            entry = entries.get(keyOf(chatRoomId, docId));
+        }
+        return entry != null && entry.senderId.equals(senderId) && Arrays.equals(entry.tag, tagOf(envelope))
+                ? entry.plainText : null;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    // Firestore ids never contain '/', so the pair cannot be ambiguous
+    private static String keyOf(String chatRoomId, String docId) {
+        return chatRoomId + '/' + docId;
+    }
+
+    private static byte[] tagOf(byte[] envelope) {
+        return Arrays.copyOfRange(envelope, envelope.length - TAG_LENGTH, envelope.length);
+    }
+}
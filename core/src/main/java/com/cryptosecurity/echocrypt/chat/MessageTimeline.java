@@ -0,0 +1,280 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import java.util.AbstractList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Sorted, read-only list of chat items that is updated incrementally by document id.
+ *
+ * Items are ordered by timestamp; items without a timestamp yet (pending server timestamp)
+ * sort after everything else. Ties keep the order in which the items first arrived.
+ * Backed by an order-statistic treap, so upsert, removeById, get and indexOfId are all
+ * O(log n), and every change is reported to the Listener as a precise position so the
+ * adapter never needs notifyDataSetChanged().
+ */
+public class MessageTimeline<T> extends AbstractList<T> {
+
+    /**
+     * Receives position-level changes, mirroring RecyclerView.Adapter's notifyItem* methods.
+     */
+    public interface Listener {
+        void onItemInserted(int position);
+        void onItemRemoved(int position);
+        void onItemMoved(int fromPosition, int toPosition);
+        void onItemChanged(int position);
+    }
+
+    private static final long PENDING = Long.MAX_VALUE;
+
+    private static final class Node<T> {
+        final String id;
+        long time;
+        final long sequence;
+        final int priority;
+        T item;
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(String id, long time, long sequence, int priority, T item) {
+            this.id = id;
+            this.time = time;
+            this.sequence = sequence;
+            this.priority = priority;
+            this.item = item;
+        }
+    }
+
+    private final Function<T, Date> timestampOf;
+    private final Map<String, Node<T>> nodesById = new HashMap<>();
+    private final Random random = new Random();
+    private Node<T> root;
+    private long nextSequence;
+    private Listener listener;
+
+    /**
+     * @param timestampOf Returns an item's timestamp, or null while it is still pending.
+     */
+    public MessageTimeline(Function<T, Date> timestampOf) {
+        this.timestampOf = timestampOf;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Inserts a new item or replaces the item with the same id, moving it if its timestamp changed.
+     */
+    public void upsert(String id, T item) {
+        long time = timeOf(item);
+        Node<T> node = nodesById.get(id);
+        if (node == null) {
+            node = new Node<>(id, time, nextSequence++, random.nextInt(), item);
+            nodesById.put(id, node);
+            root = insert(root, node);
+            if (listener != null) listener.onItemInserted(rank(node));
+            return;
+        }
+
+        if (node.time == time) {
+            node.item = item;
+            if (listener != null) listener.onItemChanged(rank(node));
+            return;
+        }
+
+        // The sort key changed, typically a pending message receiving its server timestamp
+        int from = rank(node);
+        root = delete(root, node);
+        node.time = time;
+        node.item = item;
+        node.left = null;
+        node.right = null;
+        node.size = 1;
+        root = insert(root, node);
+        int to = rank(node);
+        if (listener != null) {
+            if (from != to) listener.onItemMoved(from, to);
+            listener.onItemChanged(to);
+        }
+    }
+
+    /**
+     * Removes the item with the given id.
+     * @return true if an item was removed.
+     */
+    public boolean removeById(String id) {
+        Node<T> node = nodesById.remove(id);
+        if (node == null) return false;
+        int position = rank(node);
+        root = delete(root, node);
+        if (listener != null) listener.onItemRemoved(position);
+        return true;
+    }
+
+    /**
+     * @return The item with the given id, or null if it is not in the timeline.
+     */
+    public T getById(String id) {
+        Node<T> node = nodesById.get(id);
+        return node != null ? node.item : null;
+    }
+
+    /**
+     * @return The position of the item with the given id, or -1 if it is not in the timeline.
+     */
+    public int indexOfId(String id) {
+        Node<T> node = nodesById.get(id);
+        return node != null ? rank(node) : -1;
+    }
+
+    /**
+     * @return How many items have a timestamp at or before the given time, which is also the
+     *         position of the first later item. Pending items are never counted. O(log n).
+     */
+    public int countAtOrBefore(long time) {
+        int count = 0;
+        Node<T> node = root;
+        while (node != null) {
+            if (node.time <= time && node.time != PENDING) {
+                count += sizeOf(node.left) + 1;
+                node = node.right;
+            } else {
+                node = node.left;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The id of the item at the given position.
+     */
+    public String getId(int index) {
+        return nodeAt(index).id;
+    }
+
+    @Override
+    public T get(int index) {
+        return nodeAt(index).item;
+    }
+
+    @Override
+    public int size() {
+        return root == null ? 0 : root.size;
+    }
+
+    /**
+     * Removes every item without notifying position by position.
+     */
+    @Override
+    public void clear() {
+        root = null;
+        nodesById.clear();
+    }
+
+    private long timeOf(T item) {
+        Date timestamp = timestampOf.apply(item);
+        return timestamp != null ? timestamp.getTime() : PENDING;
+    }
+
+    private Node<T> nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = sizeOf(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    // Walks down from the root using the node's sort key, counting everything to its left
+    private int rank(Node<T> target) {
+        int rank = 0;
+        Node<T> node = root;
+        while (node != target) {
+            if (compare(target, node) < 0) {
+                node = node.left;
+            } else {
+                rank += sizeOf(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return rank + sizeOf(target.left);
+    }
+
+    private static int compare(Node<?> a, Node<?> b) {
+        if (a.time != b.time) return a.time < b.time ? -1 : 1;
+        return Long.compare(a.sequence, b.sequence);
+    }
+
+    private static int sizeOf(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static <T> Node<T> update(Node<T> node) {
+        node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+        return node;
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> newNode) {
+        if (node == null) return newNode;
+        if (compare(newNode, node) < 0) {
+            node.left = insert(node.left, newNode);
+            if (node.left.priority > node.priority) node = rotateRight(node);
+        } else {
+            node.right = insert(node.right, newNode);
+            if (node.right.priority > node.priority) node = rotateLeft(node);
+        }
+        return update(node);
+    }
+
+    private static <T> Node<T> rotateRight(Node<T> node) {
+        Node<T> pivot = node.left;
+        node.left = pivot.right;
+        pivot.right = update(node);
+        return pivot;
+    }
+
+    private static <T> Node<T> rotateLeft(Node<T> node) {
+        Node<T> pivot = node.right;
+        node.right = pivot.left;
+        pivot.left = update(node);
+        return pivot;
+    }
+
+    private Node<T> delete(Node<T> node, Node<T> target) {
+        if (node == target) {
+            return merge(node.left, node.right);
+        }
+        if (compare(target, node) < 0) {
+            node.left = delete(node.left, target);
+        } else {
+            node.right = delete(node.right, target);
+        }
+        return update(node);
+    }
+
+    private Node<T> merge(Node<T> left, Node<T> right) {
+        if (left == null) return right;
+        if (right == null) return left;
+        if (left.priority > right.priority) {
+            left.right = merge(left.right, right);
+            return update(left);
+        } else {
+            right.left = merge(left, right.left);
+            return update(right);
+        }
+    }
+}
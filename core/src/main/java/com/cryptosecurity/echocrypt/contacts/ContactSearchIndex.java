@@ -0,0 +1,156 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import com.cryptosecurity.echocrypt.models.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable substring index over contact emails.
+ *
+ * Emails are lower-cased once when the index is built. Every distinct trigram of an email maps
+ * to the sorted positions of the contacts containing it, so a query of three or more characters
+ * only checks the contacts listed under its rarest trigram. Shorter queries scan the
+ * pre-normalized emails. Results keep the order of the list the index was built from, or
+ * email order for an index from sortedByEmail().
+ *
+ * Building is O(total email length); do it off the main thread for large directories.
+ */
+public final class ContactSearchIndex {
+
+    private static final int GRAM = 3;
+    private static final int[] NO_POSITIONS = new int[0];
+
+    private final List<User> contacts;
+    private final String[] normalized;
+    private final Map<Long, int[]> postings;
+
+    public ContactSearchIndex(List<User> contacts) {
+        this(new ArrayList<>(contacts), normalizeEmails(contacts));
+    }
+
+    // Takes ownership of both arrays; normalized[i] is the normalized email of contacts[i]
+    private ContactSearchIndex(List<User> contacts, String[] normalized) {
+        this.contacts = Collections.unmodifiableList(contacts);
+        this.normalized = normalized;
+
+        Map<Long, IntList> building = new HashMap<>();
+        for (int i = 0; i < normalized.length; i++) {
+            String email = normalized[i];
+            for (int start = 0; start + GRAM <= email.length(); start++) {
+                Long key = trigram(email, start);
+                IntList positions = building.get(key);
+                if (positions == null) {
+                    positions = new IntList();
+                    building.put(key, positions);
+                }
+                positions.addDistinct(i); // repeated trigrams within one email are stored once
+            }
+        }
+        postings = new HashMap<>(building.size() * 4 / 3 + 1);
+        for (Map.Entry<Long, IntList> entry : building.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().toArray());
+        }
+    }
+
+    /**
+     * Builds an index over the contacts in order of their normalized email. Each email is
+     * normalized once, for sorting and indexing alike.
+     */
+    public static ContactSearchIndex sortedByEmail(Collection<User> contacts) {
+        User[] users = contacts.toArray(new User[0]);
+        String[] emails = normalizeEmails(Arrays.asList(users));
+        Integer[] order = new Integer[users.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> emails[a].compareTo(emails[b]));
+
+        List<User> sorted = new ArrayList<>(users.length);
+        String[] sortedEmails = new String[users.length];
+        for (int i = 0; i < order.length; i++) {
+            sorted.add(users[order[i]]);
+            sortedEmails[i] = emails[order[i]];
+        }
+        return new ContactSearchIndex(sorted, sortedEmails);
+    }
+
+    public static String normalize(String text) {
+        return text == null ? "" : text.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+
+    public List<User> getContacts() {
+        return contacts;
+    }
+
+    /**
+     * @return The contacts whose email contains the query, ignoring case, in index order.
+     *         An empty query matches everyone.
+     */
+    public List<User> search(String query) {
+        String needle = normalize(query);
+        if (needle.isEmpty()) {
+            return contacts;
+        }
+        List<User> results = new ArrayList<>();
+        if (needle.length() < GRAM) {
+            for (int i = 0; i < normalized.length; i++) {
+                if (normalized[i].contains(needle)) results.add(contacts.get(i));
+            }
+            return results;
+        }
+
+        int[] candidates = null;
+        for (int start = 0; start + GRAM <= needle.length(); start++) {
+            int[] positions = postings.get(trigram(needle, start));
+            if (positions == null) {
+                return results; // no email contains this trigram
+            }
+            if (candidates == null || positions.length < candidates.length) {
+                candidates = positions;
+            }
+        }
+        for (int position : candidates) {
+            if (normalized[position].contains(needle)) results.add(contacts.get(position));
+        }
+        return results;
+    }
+
+    private static String[] normalizeEmails(List<User> contacts) {
+        String[] emails = new String[contacts.size()];
+        for (int i = 0; i < emails.length; i++) {
+            emails[i] = normalize(contacts.get(i).getEmail());
+        }
+        return emails;
+    }
+
+    private static long trigram(String text, int start) {
+        return ((long) text.charAt(start) << 32) | ((long) text.charAt(start + 1) << 16) | text.charAt(start + 2);
+    }
+
+    // Minimal growable int array; positions are added in ascending order
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void addDistinct(int value) {
+            if (size > 0 && values[size - 1] == value) return;
+            if (size == values.length) values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return size == 0 ? NO_POSITIONS : Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Streaming AES/GCM for attachments too large to hold in memory.
+ *
+ * The plaintext is cut into fixed-size chunks that are sealed one at a time, so memory use is
+ * two chunk buffers whatever the file size. Layout:
+ *
+ *   header: version (1) | chunk size (4) | nonce prefix (7)
+ *   chunks: ciphertext+tag, each holding exactly chunk size bytes of plaintext except the last
+ *
+ * Chunk i is sealed with the nonce  prefix | i (4) | last (1)  and the header as associated
+ * data. Chunks therefore cannot be reordered or swapped between attachments, and a stream cut
+ * short at a chunk boundary fails because its new final chunk was not sealed as the last one.
+ * The random prefix keeps nonces unique across attachments sealed under the same session key.
+ *
+ * Decryption writes each chunk as soon as it authenticates, so if decrypt throws, the output
+ * written so far must be discarded.
+ */
+public final class AttachmentCipher {
+
+    public static final byte VERSION_1 = 1;
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // Bounds the buffers a reader allocates for a chunk size taken from an untrusted header
+    public static final int MAX_CHUNK_SIZE = 1024 * 1024;
+
+    private static final int NONCE_PREFIX_LENGTH = 7;
+    public static final int HEADER_LENGTH = 1 + 4 + NONCE_PREFIX_LENGTH;
+    private static final int TAG_BYTES = CipherEngine.GCM_TAG_LENGTH / 8;
+
+    private AttachmentCipher() {}
+
+    /**
+     * @return The encrypted size of a plaintext of the given length.
+     */
+    public static long getEncryptedLength(long plainLength, int chunkSize) {
+        long chunks = Math.max(1, (plainLength + chunkSize - 1) / chunkSize); // empty input still has a final chunk
+        return HEADER_LENGTH + plainLength + chunks * TAG_BYTES;
+    }
+
+    public static long encrypt(SecretKey key, InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        return encrypt(key, DEFAULT_CHUNK_SIZE, Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    /**
+     * Encrypts everything readable from in and writes the sealed stream to out.
+     * Neither channel is closed.
+     * @return The number of bytes written.
+     */
+    public static long encrypt(SecretKey key, int chunkSize, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(VERSION_1).putInt(chunkSize);
+        byte[] prefix = new byte[NONCE_PREFIX_LENGTH];
+        CipherEngine.threadRandom().nextBytes(prefix);
+        header.put(prefix);
+        byte[] aad = header.array();
+        header.flip();
+        writeFully(out, header);
+
+        // One spare byte tells whether another chunk follows the current one
+        ByteBuffer plain = ByteBuffer.allocate(chunkSize + 1);
+        ByteBuffer sealed = ByteBuffer.allocate(chunkSize + TAG_BYTES);
+        byte[] nonce = new byte[CipherEngine.GCM_IV_LENGTH];
+        System.arraycopy(prefix, 0, nonce, 0, NONCE_PREFIX_LENGTH);
+        Cipher cipher = CipherEngine.threadCipher();
+
+        long written = HEADER_LENGTH;
+        for (int index = 0; ; index++) {
+            fill(in, plain);
+            plain.flip();
+            boolean last = plain.remaining() <= chunkSize;
+            int available = plain.limit();
+            if (!last) plain.limit(chunkSize);
+
+            setChunkNonce(nonce, index, last);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(CipherEngine.GCM_TAG_LENGTH, nonce));
+            cipher.updateAAD(aad);
+            sealed.clear();
+            cipher.doFinal(plain, sealed);
+            sealed.flip();
+            written += sealed.remaining();
+            writeFully(out, sealed);
+
+            if (last) return written;
+            if (index == -1) throw new GeneralSecurityException("Attachment has too many chunks");
+            plain.limit(available);
+            plain.compact();
+        }
+    }
+
+    public static long decrypt(SecretKey key, InputStream in, OutputStream out) throws IOException, GeneralSecurityException {
+        return decrypt(key, Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    /**
+     * Verifies and decrypts a sealed stream, writing the plaintext to out chunk by chunk.
+     * Neither channel is closed.
+     * @return The number of plaintext bytes written.
+     * @throws GeneralSecurityException If the stream was tampered with, truncated or sealed
+     *         under a different key. Anything already written to out must be discarded.
+     */
+    public static long decrypt(SecretKey key, ReadableByteChannel in, WritableByteChannel out)
+            throws IOException, GeneralSecurityException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        fill(in, header);
+        if (header.hasRemaining()) {
+            throw new EOFException("Attachment header is truncated");
+        }
+        header.flip();
+        byte version = header.get();
+        if (version != VERSION_1) {
+            throw new GeneralSecurityException("Unsupported attachment version " + version);
+        }
+        int chunkSize = header.getInt();
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new GeneralSecurityException("Invalid attachment chunk size " + chunkSize);
+        }
+        byte[] aad = header.array();
+        byte[] nonce = new byte[CipherEngine.GCM_IV_LENGTH];
+        header.get(nonce, 0, NONCE_PREFIX_LENGTH);
+
+        int sealedChunkSize = chunkSize + TAG_BYTES;
+        ByteBuffer sealed = ByteBuffer.allocate(sealedChunkSize + 1);
+        ByteBuffer plain = ByteBuffer.allocate(chunkSize);
+        Cipher cipher = CipherEngine.threadCipher();
+
+        long written = 0;
+        for (int index = 0; ; index++) {
+            fill(in, sealed);
+            sealed.flip();
+            boolean last = sealed.remaining() <= sealedChunkSize;
+            if (last && sealed.remaining() < TAG_BYTES) {
+                throw new AEADBadTagException("Attachment is truncated");
+            }
+            int available = sealed.limit();
+            if (!last) sealed.limit(sealedChunkSize);
+
+            setChunkNonce(nonce, index, last);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(CipherEngine.GCM_TAG_LENGTH, nonce));
+            cipher.updateAAD(aad);
+            plain.clear();
+            cipher.doFinal(sealed, plain);
+            plain.flip();
+            written += plain.remaining();
+            writeFully(out, plain);
+
+            if (last) return written;
+            if (index == -1) throw new GeneralSecurityException("Attachment has too many chunks");
+            sealed.limit(available);
+            sealed.compact();
+        }
+    }
+
+    private static void setChunkNonce(byte[] nonce, int index, boolean last) {
+        nonce[NONCE_PREFIX_LENGTH] = (byte) (index >>> 24);
+        nonce[NONCE_PREFIX_LENGTH + 1] = (byte) (index >>> 16);
+        nonce[NONCE_PREFIX_LENGTH + 2] = (byte) (index >>> 8);
+        nonce[NONCE_PREFIX_LENGTH + 3] = (byte) index;
+        nonce[NONCE_PREFIX_LENGTH + 4] = (byte) (last ? 1 : 0);
+    }
+
+    // Reads until the buffer is full or the channel is exhausted
+    private static void fill(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+            // keep reading
+        }
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+
+/**
+ * Applies an independent operation, typically decrypting one message, to every item of a long
+ * list on a work-stealing pool, and returns the results in input order.
+ *
+ * Lists shorter than the sequential threshold run on the calling thread, where forking would
+ * cost more than it saves. Longer lists are split in halves down to LEAF_SIZE items, so idle
+ * workers steal large ranges first. Every leaf writes only its own slots of the result array,
+ * so keeping the order needs no merge step.
+ */
+public class BulkDecryptor {
+
+    public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 128;
+    static final int LEAF_SIZE = 32;
+
+    private final ForkJoinPool pool;
+    private final int sequentialThreshold;
+
+    /**
+     * @param pool The pool to split work across, usually one thread per core.
+     */
+    public BulkDecryptor(ForkJoinPool pool) {
+        this(pool, DEFAULT_SEQUENTIAL_THRESHOLD);
+    }
+
+    public BulkDecryptor(ForkJoinPool pool, int sequentialThreshold) {
+        this.pool = pool;
+        this.sequentialThreshold = Math.max(1, sequentialThreshold);
+    }
+
+    /**
+     * @return operation applied to every item, in the same order as items. Exceptions thrown by
+     *         the operation propagate to the caller.
+     */
+    public <T, R> List<R> map(List<T> items, Function<? super T, ? extends R> operation) {
+        int size = items.size();
+        if (size == 0) return Collections.emptyList();
+        Object[] results = new Object[size];
+        if (size < sequentialThreshold || pool.getParallelism() < 2) {
+            for (int i = 0; i < size; i++) {
+                results[i] = operation.apply(items.get(i));
+            }
+        } else {
+            pool.invoke(new Slice<>(items, operation, results, 0, size));
+        }
+        @SuppressWarnings("unchecked")
+        List<R> list = (List<R>) Arrays.asList(results);
+        return list;
+    }
+
+    private static final class Slice<T, R> extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<T> items;
+        private final Function<? super T, ? extends R> operation;
+        private final Object[] results;
+        private final int from;
+        private final int to;
+
+        Slice(List<T> items, Function<? super T, ? extends R> operation, Object[] results, int from, int to) {
+            this.items = items;
+            this.operation = operation;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    results[i] = operation.apply(items.get(i));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Slice<>(items, operation, results, from, middle),
+                    new Slice<>(items, operation, results, middle, to));
+        }
+    }
+}
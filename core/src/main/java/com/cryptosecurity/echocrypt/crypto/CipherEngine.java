@@ -0,0 +1,201 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Allocation-light AES/GCM engine behind EncryptionHelper.
+ *
+ * Each thread keeps its own Cipher, SecureRandom and scratch buffer, so bulk work such as
+ * decrypting a long history does not pay for Cipher.getInstance() or a fresh CSPRNG per
+ * message. All methods work on caller-supplied slices and produce the same
+ * IV || ciphertext+tag layout that EncryptionHelper has always used.
+ */
+public final class CipherEngine {
+
+    private static final String AES_ALGORITHM = "AES/GCM/NoPadding";
+    public static final int GCM_IV_LENGTH = 12; // 12 bytes is recommended for GCM
+    public static final int GCM_TAG_LENGTH = 128; // In bits
+    private static final int GCM_TAG_BYTES = GCM_TAG_LENGTH / 8;
+
+    private static final ThreadLocal<Cipher> CIPHER = new ThreadLocal<Cipher>() {
+        @Override
+        protected Cipher initialValue() {
+            try {
+                return Cipher.getInstance(AES_ALGORITHM);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("AES/GCM is not available", e);
+            }
+        }
+    };
+
+    private static final ThreadLocal<SecureRandom> RANDOM = new ThreadLocal<SecureRandom>() {
+        @Override
+        protected SecureRandom initialValue() {
+            return new SecureRandom();
+        }
+    };
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[1024];
+        }
+    };
+
+    private CipherEngine() {}
+
+    // Shared with AttachmentCipher, which drives the cipher chunk by chunk
+    static Cipher threadCipher() {
+        return CIPHER.get();
+    }
+
+    static SecureRandom threadRandom() {
+        return RANDOM.get();
+    }
+
+    /**
+     * @return The size of IV || ciphertext+tag for a plaintext of the given length.
+     */
+    public static int getEncryptedLength(int plainLength) {
+        return GCM_IV_LENGTH + plainLength + GCM_TAG_BYTES;
+    }
+
+    /**
+     * @return The plaintext size for an IV || ciphertext+tag block of the given length.
+     */
+    public static int getDecryptedLength(int encryptedLength) {
+        return encryptedLength - GCM_IV_LENGTH - GCM_TAG_BYTES;
+    }
+
+    /**
+     * Encrypts in[inOffset, inOffset + inLength) and writes IV || ciphertext+tag to out.
+     * @return The number of bytes written, always getEncryptedLength(inLength).
+     */
+    public static int encrypt(SecretKey key, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        return encrypt(key, null, in, inOffset, inLength, out, outOffset);
+    }
+
+    /**
+     * Like encrypt, but also authenticates aad (may be null) without encrypting it.
+     * The same aad must be passed to decrypt.
+     */
+    public static int encrypt(SecretKey key, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        int required = getEncryptedLength(inLength);
+        if (out.length - outOffset < required) {
+            throw new ShortBufferException("Need " + required + " bytes of output");
+        }
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        RANDOM.get().nextBytes(iv);
+        System.arraycopy(iv, 0, out, outOffset, GCM_IV_LENGTH);
+
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        if (aad != null) cipher.updateAAD(aad);
+        return GCM_IV_LENGTH + cipher.doFinal(in, inOffset, inLength, out, outOffset + GCM_IV_LENGTH);
+    }
+
+    /**
+     * Decrypts an IV || ciphertext+tag block and writes the plaintext to out.
+     * @return The number of plaintext bytes written.
+     */
+    public static int decrypt(SecretKey key, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        return decrypt(key, null, in, inOffset, inLength, out, outOffset);
+    }
+
+    /**
+     * Like decrypt, but also verifies the associated data passed to encrypt (may be null).
+     */
+    public static int decrypt(SecretKey key, byte[] aad, byte[] in, int inOffset, int inLength,
+                              byte[] out, int outOffset) throws GeneralSecurityException {
+        if (inLength < GCM_IV_LENGTH + GCM_TAG_BYTES) {
+            throw new AEADBadTagException("Encrypted block is too short");
+        }
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, in, inOffset, GCM_IV_LENGTH));
+        if (aad != null) cipher.updateAAD(aad);
+        return cipher.doFinal(in, inOffset + GCM_IV_LENGTH, inLength - GCM_IV_LENGTH, out, outOffset);
+    }
+
+    /**
+     * ByteBuffer variant of encrypt. Consumes the remaining bytes of in and advances out.
+     * @return The number of bytes written to out.
+     */
+    public static int encrypt(SecretKey key, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        int required = getEncryptedLength(in.remaining());
+        if (out.remaining() < required) {
+            throw new ShortBufferException("Need " + required + " bytes of output");
+        }
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        RANDOM.get().nextBytes(iv);
+        out.put(iv);
+
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        return GCM_IV_LENGTH + cipher.doFinal(in, out);
+    }
+
+    /**
+     * ByteBuffer variant of decrypt. Consumes the remaining bytes of in and advances out.
+     * @return The number of plaintext bytes written to out.
+     */
+    public static int decrypt(SecretKey key, ByteBuffer in, ByteBuffer out) throws GeneralSecurityException {
+        if (in.remaining() < GCM_IV_LENGTH + GCM_TAG_BYTES) {
+            throw new AEADBadTagException("Encrypted block is too short");
+        }
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        in.get(iv);
+
+        Cipher cipher = CIPHER.get();
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_LENGTH, iv));
+        return cipher.doFinal(in, out);
+    }
+
+    /**
+     * Encrypts a string as UTF-8.
+     * @return A new array holding IV || ciphertext+tag.
+     */
+    public static byte[] encryptString(SecretKey key, String plainText) throws GeneralSecurityException {
+        byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+        byte[] out = new byte[getEncryptedLength(plain.length)];
+        encrypt(key, plain, 0, plain.length, out, 0);
+        return out;
+    }
+
+    /**
+     * Decrypts an IV || ciphertext+tag block into a UTF-8 string, using the thread's
+     * scratch buffer for the intermediate plaintext.
+     */
+    public static String decryptString(SecretKey key, byte[] in, int inOffset, int inLength) throws GeneralSecurityException {
+        return decryptString(key, null, in, inOffset, inLength);
+    }
+
+    /**
+     * decryptString with associated data, see decrypt(SecretKey, byte[], byte[], int, int, byte[], int).
+     */
+    public static String decryptString(SecretKey key, byte[] aad, byte[] in, int inOffset, int inLength) throws GeneralSecurityException {
+        byte[] scratch = scratchBuffer(Math.max(0, getDecryptedLength(inLength)));
+        int plainLength = decrypt(key, aad, in, inOffset, inLength, scratch, 0);
+        return new String(scratch, 0, plainLength, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] scratchBuffer(int minSize) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch.length < minSize) {
+            scratch = new byte[Math.max(minSize, scratch.length * 2)];
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+}
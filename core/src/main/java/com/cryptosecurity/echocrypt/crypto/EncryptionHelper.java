@@ -0,0 +1,183 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Key agreement and message encryption. Pure JVM, so it can be unit tested and benchmarked
+ * off-device; on Android, java.util.logging output goes to logcat.
+ */
+public class EncryptionHelper {
+
+    private static final Logger LOG = Logger.getLogger("EncryptionHelper");
+    /**
+     * Returned by the decrypt methods in place of a message that could not be decrypted.
+     */
+    public static final String DECRYPTION_ERROR = "[Decryption Error]";
+
+    // 76-character lines separated by '\n', like android.util.Base64.DEFAULT except that DEFAULT
+    // also ends the output with '\n'; both decoders skip line breaks, so either reads the other
+    private static final Base64.Encoder BASE64_ENCODER = Base64.getMimeEncoder(76, new byte[]{'\n'});
+    // Skips line breaks and other whitespace, like android.util.Base64
+    private static final Base64.Decoder BASE64_DECODER = Base64.getMimeDecoder();
+
+    /**
+     * Converts a Base64 encoded public key string back into a PublicKey object.
+     * @param publicKeyString The Base64 string from Firestore.
+     * @return A PublicKey object.
+     */
+    public static PublicKey getPublicKeyFromString(String publicKeyString) throws NoSuchAlgorithmException, InvalidKeySpecException {
+        byte[] keyBytes = BASE64_DECODER.decode(publicKeyString);
+        X509EncodedKeySpec spec = new X509EncodedKeySpec(keyBytes);
+        KeyFactory keyFactory = KeyFactory.getInstance("EC");
+        return keyFactory.generatePublic(spec);
+    }
+
+    /**
+     * Computes a stable fingerprint of a Base64 encoded public key.
+     * Whitespace and line breaks in the encoding do not affect the result.
+     * @param publicKeyString The Base64 string from Firestore.
+     * @return The hex encoded SHA-256 digest of the decoded key bytes.
+     */
+    public static String getKeyFingerprint(String publicKeyString) {
+        byte[] keyBytes = BASE64_DECODER.decode(publicKeyString);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(keyBytes);
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform and every Android release is required to provide SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Generates a shared secret key using Elliptic Curve Diffie-Hellman (ECDH).
+     * @param myPrivateKey The current user's private key.
+     * @param theirPublicKey The other user's public key.
+     * @return A SecretKey that can be used for symmetric encryption (AES).
+     */
+    public static SecretKey generateSharedSecret(PrivateKey myPrivateKey, PublicKey theirPublicKey) {
+        long start = CryptoMetrics.start();
+        try {
+            KeyAgreement keyAgreement = KeyAgreement.getInstance("ECDH");
+            keyAgreement.init(myPrivateKey);
+            keyAgreement.doPhase(theirPublicKey, true);
+            byte[] sharedSecret = keyAgreement.generateSecret();
+            // Using the raw shared secret as an AES key is okay here, but for production,
+            // you might run it through a KDF (Key Derivation Function) like HKDF.
+            SecretKey secretKey = new SecretKeySpec(sharedSecret, 0, 32, "AES"); // Use first 256 bits (32 bytes) for AES-256
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.KEY_AGREEMENT, start, 0);
+            return secretKey;
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            CryptoMetrics.recordFailure(CryptoMetrics.Op.KEY_AGREEMENT, start, e);
+            LOG.log(Level.SEVERE, "Failed to generate shared secret", e);
+            return null;
+        }
+    }
+
+    /**
+     * Encrypts a plain text message using AES/GCM with the shared secret.
+     * @param plainText The message to encrypt.
+     * @param secretKey The shared secret key.
+     * @return A Base64 encoded string containing the IV and the ciphertext.
+     */
+    public static String encrypt(String plainText, SecretKey secretKey) {
+        long start = CryptoMetrics.start();
+        try {
+            // The engine generates the IV and prepends it to the ciphertext
+            byte[] ivAndCipherText = CipherEngine.encryptString(secretKey, plainText);
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.ENCRYPT, start, ivAndCipherText.length);
+            return BASE64_ENCODER.encodeToString(ivAndCipherText);
+
+        } catch (GeneralSecurityException e) {
+            CryptoMetrics.recordFailure(CryptoMetrics.Op.ENCRYPT, start, e);
+            LOG.log(Level.SEVERE, "Encryption failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Encrypts a plain text message into a binary MessageEnvelope using AES/GCM.
+     * Long messages are compressed first when that makes them smaller.
+     * @param plainText The message to encrypt.
+     * @param secretKey The shared secret key.
+     * @return The envelope bytes, ready to be stored as a Firestore Blob.
+     */
+    public static byte[] encryptToEnvelope(String plainText, SecretKey secretKey) {
+        long start = CryptoMetrics.start();
+        try {
+            byte[] envelope = MessageEnvelope.sealString(secretKey, plainText);
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.SEAL_ENVELOPE, start, envelope.length);
+            return envelope;
+
+        } catch (GeneralSecurityException e) {
+            CryptoMetrics.recordFailure(CryptoMetrics.Op.SEAL_ENVELOPE, start, e);
+            LOG.log(Level.SEVERE, "Encryption failed", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decrypts a binary MessageEnvelope.
+     * @param envelope The envelope bytes from Firestore.
+     * @param secretKey The shared secret key.
+     * @return The original plain text message.
+     */
+    public static String decryptEnvelope(byte[] envelope, SecretKey secretKey) {
+        long start = CryptoMetrics.start();
+        try {
+            String plainText = MessageEnvelope.openString(secretKey, envelope);
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.OPEN_ENVELOPE, start, envelope.length);
+            return plainText;
+
+        } catch (GeneralSecurityException | DataFormatException e) {
+            CryptoMetrics.recordFailure(CryptoMetrics.Op.OPEN_ENVELOPE, start, e);
+            LOG.log(Level.SEVERE, "Decryption failed", e);
+            return DECRYPTION_ERROR;
+        }
+    }
+
+    /**
+     * Decrypts a message using AES/GCM.
+     * Used for messages sent before the binary envelope format.
+     * @param encryptedString The Base64 string containing the IV and ciphertext.
+     * @param secretKey The shared secret key.
+     * @return The original plain text message.
+     */
+    public static String decrypt(String encryptedString, SecretKey secretKey) {
+        long start = CryptoMetrics.start();
+        try {
+            byte[] ivAndCipherText = BASE64_DECODER.decode(encryptedString);
+            String plainText = CipherEngine.decryptString(secretKey, ivAndCipherText, 0, ivAndCipherText.length);
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.DECRYPT, start, ivAndCipherText.length);
+            return plainText;
+
+        } catch (GeneralSecurityException | IllegalArgumentException e) {
+            CryptoMetrics.recordFailure(CryptoMetrics.Op.DECRYPT, start, e);
+            LOG.log(Level.SEVERE, "Decryption failed", e);
+            // Return a placeholder to indicate decryption failure
+            return DECRYPTION_ERROR;
+        }
+    }
+}
\ No newline at end of file
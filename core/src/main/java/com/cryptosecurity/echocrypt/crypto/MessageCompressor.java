@@ -0,0 +1,81 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Raw DEFLATE for message plaintext, applied before encryption by MessageEnvelope.
+ *
+ * Like CipherEngine, each thread reuses its own Deflater and Inflater instead of allocating
+ * native zlib state per message.
+ */
+public final class MessageCompressor {
+
+    // Compressed output must save at least 1/MIN_SAVING_DIVISOR of the input to be used
+    private static final int MIN_SAVING_DIVISOR = 8;
+
+    private static final ThreadLocal<Deflater> DEFLATER = new ThreadLocal<Deflater>() {
+        @Override
+        protected Deflater initialValue() {
+            return new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+    };
+
+    private static final ThreadLocal<Inflater> INFLATER = new ThreadLocal<Inflater>() {
+        @Override
+        protected Inflater initialValue() {
+            return new Inflater(true);
+        }
+    };
+
+    private MessageCompressor() {}
+
+    /**
+     * Compresses in[offset, offset + length). Deflating stops as soon as the output would be
+     * too large to be worth it, so incompressible input costs at most one bounded pass.
+     * @return The compressed bytes, or null if they would not save at least an eighth of the input.
+     */
+    public static byte[] compress(byte[] in, int offset, int length) {
+        int limit = length - length / MIN_SAVING_DIVISOR;
+        byte[] out = new byte[limit];
+        Deflater deflater = DEFLATER.get();
+        deflater.reset();
+        deflater.setInput(in, offset, length);
+        deflater.finish();
+
+        int written = 0;
+        while (!deflater.finished() && written < limit) {
+            written += deflater.deflate(out, written, limit - written);
+        }
+        return deflater.finished() ? Arrays.copyOf(out, written) : null;
+    }
+
+    /**
+     * Inflates in[offset, offset + length), refusing to produce more than maxLength bytes.
+     * @throws DataFormatException If the data is corrupt, truncated or inflates past maxLength.
+     */
+    public static byte[] inflate(byte[] in, int offset, int length, int maxLength) throws DataFormatException {
+        Inflater inflater = INFLATER.get();
+        inflater.reset();
+        inflater.setInput(in, offset, length);
+
+        byte[] out = new byte[(int) Math.min(maxLength, Math.max(256, length * 4L))];
+        int written = 0;
+        while (!inflater.finished()) {
+            if (written == out.length) {
+                if (out.length == maxLength) {
+                    throw new DataFormatException("Message inflates past " + maxLength + " bytes");
+                }
+                out = Arrays.copyOf(out, (int) Math.min(maxLength, out.length * 2L));
+            }
+            int inflated = inflater.inflate(out, written, out.length - written);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Compressed message is truncated");
+            }
+            written += inflated;
+        }
+        return written == out.length ? out : Arrays.copyOf(out, written);
+    }
+}
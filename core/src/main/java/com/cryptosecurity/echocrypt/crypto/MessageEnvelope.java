@@ -0,0 +1,177 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.zip.DataFormatException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Versioned binary format for encrypted chat messages, stored in Firestore as a Blob:
+ *
+ *   version (1) | flags (1) | key id (8) | IV (12) | ciphertext+tag
+ *
+ * The version, flags and key id form the header, which is authenticated as GCM associated
+ * data so it cannot be altered without failing decryption. The key id lets a reader reject a
+ * message sealed under another key before running GCM. A reader refuses flags it does not
+ * understand rather than returning garbage.
+ *
+ * Plaintext of at least COMPRESSION_THRESHOLD bytes is deflated before encryption when that
+ * saves enough, and FLAG_DEFLATE records it in the authenticated header. Compression lets the
+ * ciphertext length depend on content as well as size, which is why short messages, where
+ * there is little to gain, are never compressed.
+ *
+ * Messages written before this format are Base64 text and are still read by
+ * EncryptionHelper.decrypt(String, SecretKey).
+ */
+public final class MessageEnvelope {
+
+    public static final byte VERSION_1 = 1;
+    public static final int KEY_ID_LENGTH = 8;
+    public static final int HEADER_LENGTH = 2 + KEY_ID_LENGTH;
+
+    public static final int FLAG_DEFLATE = 0x01;
+    public static final int COMPRESSION_THRESHOLD = 256;
+    // Firestore documents are capped at 1 MiB, so no honest sender produces more than this
+    public static final int MAX_PLAINTEXT_LENGTH = 1024 * 1024;
+
+    private static final int OFFSET_FLAGS = 1;
+    private static final int OFFSET_KEY_ID = 2;
+    private static final int SUPPORTED_FLAGS = FLAG_DEFLATE;
+    private static final byte[] KEY_ID_LABEL = "EchoCrypt key id".getBytes(StandardCharsets.UTF_8);
+
+    // Session keys live for the whole chat, so derive each id once
+    private static final Map<SecretKey, byte[]> KEY_IDS = Collections.synchronizedMap(new WeakHashMap<>());
+
+    private MessageEnvelope() {}
+
+    /**
+     * @return The envelope size for a plaintext of the given length.
+     */
+    public static int getSealedLength(int plainLength) {
+        return HEADER_LENGTH + CipherEngine.getEncryptedLength(plainLength);
+    }
+
+    /**
+     * Encrypts plain[offset, offset + length) into a new envelope.
+     */
+    public static byte[] seal(SecretKey key, int flags, byte[] plain, int offset, int length) throws GeneralSecurityException {
+        byte[] header = new byte[HEADER_LENGTH];
+        header[0] = VERSION_1;
+        header[OFFSET_FLAGS] = (byte) flags;
+        System.arraycopy(keyIdOf(key), 0, header, OFFSET_KEY_ID, KEY_ID_LENGTH);
+
+        byte[] envelope = new byte[getSealedLength(length)];
+        System.arraycopy(header, 0, envelope, 0, HEADER_LENGTH);
+        CipherEngine.encrypt(key, header, plain, offset, length, envelope, HEADER_LENGTH);
+        return envelope;
+    }
+
+    /**
+     * Encrypts a string as UTF-8 into a new envelope, deflating it first when it is long
+     * enough and compresses well.
+     */
+    public static byte[] sealString(SecretKey key, String plainText) throws GeneralSecurityException {
+        byte[] plain = plainText.getBytes(StandardCharsets.UTF_8);
+        if (plain.length >= COMPRESSION_THRESHOLD) {
+            byte[] compressed = MessageCompressor.compress(plain, 0, plain.length);
+            if (compressed != null) {
+                return seal(key, FLAG_DEFLATE, compressed, 0, compressed.length);
+            }
+        }
+        return seal(key, 0, plain, 0, plain.length);
+    }
+
+    /**
+     * Checks the header, decrypts the envelope and inflates it if needed into a UTF-8 string.
+     * @throws GeneralSecurityException If the version or flags are unsupported, the envelope
+     *         was sealed under a different key, or authentication fails.
+     * @throws DataFormatException If compressed content is corrupt or inflates past
+     *         MAX_PLAINTEXT_LENGTH.
+     */
+    public static String openString(SecretKey key, byte[] envelope) throws GeneralSecurityException, DataFormatException {
+        byte[] header = checkHeader(key, envelope);
+        int length = envelope.length - HEADER_LENGTH;
+        if ((getFlags(envelope) & FLAG_DEFLATE) == 0) {
+            return CipherEngine.decryptString(key, header, envelope, HEADER_LENGTH, length);
+        }
+        byte[] compressed = new byte[Math.max(0, CipherEngine.getDecryptedLength(length))];
+        int compressedLength = CipherEngine.decrypt(key, header, envelope, HEADER_LENGTH, length, compressed, 0);
+        byte[] plain = MessageCompressor.inflate(compressed, 0, compressedLength, MAX_PLAINTEXT_LENGTH);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return The flags byte of a well-formed envelope.
+     */
+    public static int getFlags(byte[] envelope) {
+        return envelope[OFFSET_FLAGS] & 0xFF;
+    }
+
+    /**
+     * @return A short, non-secret identifier for the key: a truncated SHA-256 over a fixed
+     *         label and the key bytes.
+     */
+    public static byte[] getKeyId(SecretKey key) throws InvalidKeyException {
+        return keyIdOf(key).clone();
+    }
+
+    /**
+     * @return The key id from an envelope's header, so a reader holding several keys can pick
+     *         the right one. Not authenticated until the envelope is opened.
+     * @throws GeneralSecurityException If the envelope is too short to have a header.
+     */
+    public static byte[] readKeyId(byte[] envelope) throws GeneralSecurityException {
+        if (envelope.length < HEADER_LENGTH) {
+            throw new GeneralSecurityException("Envelope is too short");
+        }
+        return Arrays.copyOfRange(envelope, OFFSET_KEY_ID, OFFSET_KEY_ID + KEY_ID_LENGTH);
+    }
+
+    private static byte[] keyIdOf(SecretKey key) throws InvalidKeyException {
+        byte[] keyId = KEY_IDS.get(key);
+        if (keyId == null) {
+            byte[] encoded = key.getEncoded();
+            if (encoded == null) {
+                throw new InvalidKeyException("Key material is not extractable");
+            }
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(KEY_ID_LABEL);
+                keyId = Arrays.copyOf(digest.digest(encoded), KEY_ID_LENGTH);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+            KEY_IDS.put(key, keyId);
+        }
+        return keyId;
+    }
+
+    // Returns the header so it can be fed to GCM as associated data
+    private static byte[] checkHeader(SecretKey key, byte[] envelope) throws GeneralSecurityException {
+        if (envelope.length < HEADER_LENGTH) {
+            throw new GeneralSecurityException("Envelope is too short");
+        }
+        if (envelope[0] != VERSION_1) {
+            throw new GeneralSecurityException("Unsupported envelope version " + envelope[0]);
+        }
+        if ((getFlags(envelope) & ~SUPPORTED_FLAGS) != 0) {
+            throw new GeneralSecurityException("Unsupported envelope flags " + getFlags(envelope));
+        }
+        byte[] header = Arrays.copyOf(envelope, HEADER_LENGTH);
+        byte[] keyId = keyIdOf(key);
+        for (int i = 0; i < KEY_ID_LENGTH; i++) {
+            if (header[OFFSET_KEY_ID + i] != keyId[i]) {
+                throw new InvalidKeyException("Envelope was sealed with a different key");
+            }
+        }
+        return header;
+    }
+}
@@ -0,0 +1,117 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * One group member's symmetric key for the messages they send to one group.
+ *
+ * The sender generates a random AES-256 key and hands it once to every member, wrapped under
+ * the pairwise ECDH session key it shares with that member. From then on each group message
+ * is sealed once with the sender key through MessageEnvelope, so sending costs one AES-GCM
+ * operation no matter how many members the group has. The envelope's key id tells readers
+ * which sender key opens it. The epoch increases every time the sender rotates the key.
+ */
+public final class SenderKey {
+
+    public static final int KEY_LENGTH = 32; // AES-256
+
+    private static final String WRAP_LABEL = "EchoCrypt sender key v1";
+
+    public final String groupId;
+    public final String senderId;
+    public final int epoch;
+    public final SecretKey key;
+
+    public SenderKey(String groupId, String senderId, int epoch, SecretKey key) {
+        this.groupId = groupId;
+        this.senderId = senderId;
+        this.epoch = epoch;
+        this.key = key;
+    }
+
+    /**
+     * Generates a fresh random sender key.
+     */
+    public static SenderKey generate(String groupId, String senderId, int epoch) {
+        byte[] raw = new byte[KEY_LENGTH];
+        CipherEngine.threadRandom().nextBytes(raw);
+        SenderKey senderKey = new SenderKey(groupId, senderId, epoch, new SecretKeySpec(raw, "AES"));
+        Arrays.fill(raw, (byte) 0);
+        return senderKey;
+    }
+
+    /**
+     * @return The id MessageEnvelope writes into the header of every message sealed with this key.
+     */
+    public byte[] getKeyId() throws InvalidKeyException {
+        return MessageEnvelope.getKeyId(key);
+    }
+
+    /**
+     * @return The key id as a number, for use as a map key.
+     */
+    public long getKeyIdValue() throws InvalidKeyException {
+        return ByteBuffer.wrap(getKeyId()).getLong();
+    }
+
+    /**
+     * Encrypts this key for one member under the session key this sender shares with them.
+     * The group, sender, recipient and epoch are authenticated as associated data, so a
+     * wrapped key cannot be replayed into another group or handed to another member.
+     */
+    public byte[] wrapFor(String recipientId, SecretKey pairwiseKey) throws GeneralSecurityException {
+        byte[] raw = key.getEncoded();
+        if (raw == null) {
+            throw new InvalidKeyException("Key material is not extractable");
+        }
+        byte[] wrapped = new byte[CipherEngine.getEncryptedLength(raw.length)];
+        CipherEngine.encrypt(pairwiseKey, contextOf(groupId, senderId, recipientId, epoch),
+                raw, 0, raw.length, wrapped, 0);
+        Arrays.fill(raw, (byte) 0);
+        return wrapped;
+    }
+
+    /**
+     * Reverses wrapFor on the recipient's side.
+     * @param pairwiseKey The session key the recipient shares with the sender.
+     * @throws GeneralSecurityException If the wrapped key was altered, was wrapped for a
+     *         different group, sender, recipient or epoch, or under a different session key.
+     */
+    public static SenderKey unwrap(String groupId, String senderId, String recipientId, int epoch,
+                                   SecretKey pairwiseKey, byte[] wrapped) throws GeneralSecurityException {
+        byte[] raw = new byte[Math.max(0, CipherEngine.getDecryptedLength(wrapped.length))];
+        int length = CipherEngine.decrypt(pairwiseKey, contextOf(groupId, senderId, recipientId, epoch),
+                wrapped, 0, wrapped.length, raw, 0);
+        if (length != KEY_LENGTH) {
+            throw new InvalidKeyException("Unexpected sender key length " + length);
+        }
+        SenderKey senderKey = new SenderKey(groupId, senderId, epoch, new SecretKeySpec(raw, "AES"));
+        Arrays.fill(raw, (byte) 0);
+        return senderKey;
+    }
+
+    // Length-prefixed, so no choice of ids can make two different contexts encode the same
+    private static byte[] contextOf(String groupId, String senderId, String recipientId, int epoch) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeUTF(WRAP_LABEL);
+            out.writeUTF(groupId);
+            out.writeUTF(senderId);
+            out.writeUTF(recipientId);
+            out.writeInt(epoch);
+        } catch (IOException e) {
+            // ByteArrayOutputStream never throws
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,122 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The sender keys one user holds across their groups: their own current key per group, which
+ * they send with, and every key received from other members, which they read with.
+ *
+ * Keys are looked up by the key id in a message envelope's header, so messages sealed under
+ * an earlier epoch still open after a rotation. The ring also remembers which members each
+ * own key was distributed to. sendingKey() only returns a key whose recipients match the
+ * current membership exactly; after any change the caller must rotate() and distribute the
+ * new key, so a member who left cannot read what is sent next and a member who joined only
+ * reads from the moment they were added.
+ *
+ * Thread-safe.
+ */
+public class SenderKeyRing {
+
+    private final String ownerId;
+    private final Map<Long, SenderKey> keysById = new HashMap<>();
+    private final Map<String, SenderKey> ownKeys = new HashMap<>(); // groupId -> newest own key
+    private final Map<String, Set<String>> distributedTo = new HashMap<>(); // groupId -> its recipients
+
+    /**
+     * @param ownerId The uid of the user whose keys this ring holds.
+     */
+    public SenderKeyRing(String ownerId) {
+        this.ownerId = ownerId;
+    }
+
+    public String getOwnerId() {
+        return ownerId;
+    }
+
+    /**
+     * Adds a key received from a member, or one of the owner's own keys restored from its
+     * distribution. An own key only becomes the sending key once markDistributed() is called.
+     */
+    public synchronized void add(SenderKey senderKey) throws InvalidKeyException {
+        keysById.put(senderKey.getKeyIdValue(), senderKey);
+        if (senderKey.senderId.equals(ownerId)) {
+            SenderKey own = ownKeys.get(senderKey.groupId);
+            if (own == null || senderKey.epoch > own.epoch) {
+                ownKeys.put(senderKey.groupId, senderKey);
+                distributedTo.remove(senderKey.groupId);
+            }
+        }
+    }
+
+    /**
+     * @return Whether the ring already holds a key with this id.
+     */
+    public synchronized boolean contains(byte[] keyId) {
+        return keysById.containsKey(ByteBuffer.wrap(keyId).getLong());
+    }
+
+    /**
+     * @return The owner's key for the group if it was distributed to exactly these members,
+     *         or null if there is none yet or membership changed since, and it must be rotated.
+     */
+    public synchronized SenderKey sendingKey(String groupId, Set<String> members) {
+        SenderKey own = ownKeys.get(groupId);
+        Set<String> recipients = distributedTo.get(groupId);
+        return own != null && members.equals(recipients) ? own : null;
+    }
+
+    /**
+     * @return The owner's newest key for the group, distributed or not, or null.
+     */
+    public synchronized SenderKey latestOwnKey(String groupId) {
+        return ownKeys.get(groupId);
+    }
+
+    /**
+     * Generates the owner's next key for a group. It is not used for sending until
+     * markDistributed() records who received it, but it can already open its own messages.
+     */
+    public synchronized SenderKey rotate(String groupId) throws InvalidKeyException {
+        SenderKey previous = ownKeys.get(groupId);
+        SenderKey next = SenderKey.generate(groupId, ownerId, previous == null ? 1 : previous.epoch + 1);
+        keysById.put(next.getKeyIdValue(), next);
+        ownKeys.put(groupId, next);
+        distributedTo.remove(groupId);
+        return next;
+    }
+
+    /**
+     * Records that an own key now reached these members. Ignored if the key was rotated out meanwhile.
+     */
+    public synchronized void markDistributed(SenderKey senderKey, Collection<String> members) {
+        if (ownKeys.get(senderKey.groupId) == senderKey) {
+            distributedTo.put(senderKey.groupId, new HashSet<>(members));
+        }
+    }
+
+    /**
+     * @return The key a group message was sealed with, or null if it has not been received yet.
+     * @throws GeneralSecurityException If the envelope is malformed.
+     */
+    public synchronized SenderKey find(String groupId, byte[] envelope) throws GeneralSecurityException {
+        SenderKey senderKey = keysById.get(ByteBuffer.wrap(MessageEnvelope.readKeyId(envelope)).getLong());
+        // Ids are 64-bit digests of random keys; a key from another group is never accepted here
+        return senderKey != null && senderKey.groupId.equals(groupId) ? senderKey : null;
+    }
+
+    /**
+     * Forgets every key, e.g. on logout.
+     */
+    public synchronized void clear() {
+        keysById.clear();
+        ownKeys.clear();
+        distributedTo.clear();
+    }
+}
@@ -0,0 +1,230 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide latency, throughput, payload size and failure metrics for the crypto hot paths.
+ *
+ * Call sites take start() before an operation and report it with recordSuccess() or
+ * recordFailure(). Recording is lock-free and allocation-free apart from the first failure of
+ * each cause. Metrics are collected per interval: snapshotAndReset() hands the current interval
+ * to the caller and starts a new one, and startPeriodicDump() does that on a timer for a
+ * MetricsSink. A sample recorded while an interval is being swapped may land in either one.
+ */
+public final class CryptoMetrics {
+
+    public enum Op {
+        GET_PRIVATE_KEY, KEY_AGREEMENT, ENCRYPT, DECRYPT, SEAL_ENVELOPE, OPEN_ENVELOPE
+    }
+
+    private static volatile boolean enabled = true;
+    private static final AtomicReference<Recorder> RECORDER = new AtomicReference<>(new Recorder());
+    private static ScheduledExecutorService dumpExecutor; // guarded by CryptoMetrics.class
+
+    private CryptoMetrics() {}
+
+    public static void setEnabled(boolean enabled) {
+        CryptoMetrics.enabled = enabled;
+    }
+
+    /**
+     * @return A start time to pass to recordSuccess() or recordFailure().
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * @param payloadBytes Size of the data the operation produced or consumed, or 0 if none.
+     */
+    public static void recordSuccess(Op op, long startNanos, int payloadBytes) {
+        if (!enabled) return;
+        OpRecorder recorder = RECORDER.get().of(op);
+        recorder.latencyNanos.record(System.nanoTime() - startNanos);
+        recorder.payloadBytes.record(payloadBytes);
+        recorder.successes.increment();
+    }
+
+    public static void recordFailure(Op op, long startNanos, Throwable cause) {
+        recordFailure(op, startNanos, cause.getClass().getSimpleName());
+    }
+
+    /**
+     * @param cause Short name of what went wrong, e.g. an exception class name.
+     */
+    public static void recordFailure(Op op, long startNanos, String cause) {
+        if (!enabled) return;
+        OpRecorder recorder = RECORDER.get().of(op);
+        recorder.latencyNanos.record(System.nanoTime() - startNanos);
+        recorder.failures.computeIfAbsent(cause, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * @return The metrics of the current interval so far.
+     */
+    public static Snapshot snapshot() {
+        return RECORDER.get().snapshot(System.nanoTime());
+    }
+
+    /**
+     * @return The metrics of the current interval, which ends here.
+     */
+    public static Snapshot snapshotAndReset() {
+        long now = System.nanoTime();
+        return RECORDER.getAndSet(new Recorder()).snapshot(now);
+    }
+
+    /**
+     * Publishes each interval's metrics to sink every intervalMs, on a background thread.
+     * Empty intervals are skipped. Replaces any dump already running.
+     */
+    public static synchronized void startPeriodicDump(MetricsSink sink, long intervalMs) {
+        stopPeriodicDump();
+        dumpExecutor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "CryptoMetrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumpExecutor.scheduleWithFixedDelay(() -> {
+            Snapshot snapshot = snapshotAndReset();
+            if (!snapshot.isEmpty()) {
+                sink.publish(snapshot);
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public static synchronized void stopPeriodicDump() {
+        if (dumpExecutor != null) {
+            dumpExecutor.shutdownNow();
+            dumpExecutor = null;
+        }
+    }
+
+    private static final class OpRecorder {
+        final Histogram latencyNanos = new Histogram();
+        final Histogram payloadBytes = new Histogram();
+        final LongAdder successes = new LongAdder();
+        final Map<String, LongAdder> failures = new ConcurrentHashMap<>();
+    }
+
+    private static final class Recorder {
+        final long startedAtNanos = System.nanoTime();
+        final Map<Op, OpRecorder> ops = new EnumMap<>(Op.class); // filled once, read-only after
+
+        Recorder() {
+            for (Op op : Op.values()) {
+                ops.put(op, new OpRecorder());
+            }
+        }
+
+        OpRecorder of(Op op) {
+            return ops.get(op);
+        }
+
+        Snapshot snapshot(long nowNanos) {
+            Map<Op, OpStats> stats = new EnumMap<>(Op.class);
+            for (Map.Entry<Op, OpRecorder> entry : ops.entrySet()) {
+                OpRecorder recorder = entry.getValue();
+                Map<String, Long> failures = new TreeMap<>();
+                for (Map.Entry<String, LongAdder> failure : recorder.failures.entrySet()) {
+                    failures.put(failure.getKey(), failure.getValue().sum());
+                }
+                stats.put(entry.getKey(), new OpStats(recorder.successes.sum(), failures,
+                        recorder.latencyNanos.snapshot(), recorder.payloadBytes.snapshot()));
+            }
+            return new Snapshot(stats, nowNanos - startedAtNanos);
+        }
+    }
+
+    /**
+     * Metrics of one operation over an interval.
+     */
+    public static final class OpStats {
+        public final long successes;
+        public final Map<String, Long> failuresByCause;
+        public final Histogram.Snapshot latencyNanos; // successes and failures alike
+        public final Histogram.Snapshot payloadBytes; // successes only
+
+        OpStats(long successes, Map<String, Long> failuresByCause,
+                Histogram.Snapshot latencyNanos, Histogram.Snapshot payloadBytes) {
+            this.successes = successes;
+            this.failuresByCause = Collections.unmodifiableMap(failuresByCause);
+            this.latencyNanos = latencyNanos;
+            this.payloadBytes = payloadBytes;
+        }
+
+        public long failures() {
+            long total = 0;
+            for (long count : failuresByCause.values()) total += count;
+            return total;
+        }
+    }
+
+    /**
+     * Metrics of every operation over one interval.
+     */
+    public static final class Snapshot {
+        public final Map<Op, OpStats> ops;
+        public final long intervalNanos;
+
+        Snapshot(Map<Op, OpStats> ops, long intervalNanos) {
+            this.ops = Collections.unmodifiableMap(ops);
+            this.intervalNanos = intervalNanos;
+        }
+
+        public OpStats get(Op op) {
+            return ops.get(op);
+        }
+
+        public boolean isEmpty() {
+            for (OpStats stats : ops.values()) {
+                if (stats.latencyNanos.count > 0) return false;
+            }
+            return true;
+        }
+
+        /**
+         * @return One line per operation that ran in the interval, e.g.
+         *         "DECRYPT n=1200 (400.0/s) fail=2 lat p50=45us p99=310us max=2.1ms bytes p50=96 p99=1279 {AEADBadTagException=2}"
+         */
+        public String format() {
+            double seconds = intervalNanos / 1e9;
+            StringBuilder out = new StringBuilder();
+            for (Map.Entry<Op, OpStats> entry : ops.entrySet()) {
+                OpStats stats = entry.getValue();
+                if (stats.latencyNanos.count == 0) continue;
+                long total = stats.successes + stats.failures();
+                out.append(String.format(Locale.ROOT, "%s n=%d (%.1f/s) fail=%d lat p50=%s p99=%s max=%s bytes p50=%d p99=%d",
+                        entry.getKey(), total, seconds > 0 ? total / seconds : 0, stats.failures(),
+                        formatNanos(stats.latencyNanos.percentile(50)), formatNanos(stats.latencyNanos.percentile(99)),
+                        formatNanos(stats.latencyNanos.max),
+                        stats.payloadBytes.percentile(50), stats.payloadBytes.percentile(99)));
+                if (!stats.failuresByCause.isEmpty()) {
+                    out.append(' ').append(stats.failuresByCause);
+                }
+                out.append('\n');
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+
+        private static String formatNanos(long nanos) {
+            if (nanos >= 1_000_000) return String.format(Locale.ROOT, "%.1fms", nanos / 1e6);
+            return (nanos / 1_000) + "us";
+        }
+    }
+}
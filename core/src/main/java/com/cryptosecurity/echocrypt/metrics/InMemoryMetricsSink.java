@@ -0,0 +1,41 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Keeps the most recent snapshots in memory, e.g. for a debug screen or a bug report.
+ */
+public class InMemoryMetricsSink implements MetricsSink {
+
+    private final int capacity;
+    private final Deque<CryptoMetrics.Snapshot> snapshots = new ArrayDeque<>(); // guarded by this
+
+    public InMemoryMetricsSink(int capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public synchronized void publish(CryptoMetrics.Snapshot snapshot) {
+        if (snapshots.size() == capacity) {
+            snapshots.removeFirst();
+        }
+        snapshots.addLast(snapshot);
+    }
+
+    /**
+     * @return The retained snapshots, oldest first.
+     */
+    public synchronized List<CryptoMetrics.Snapshot> getSnapshots() {
+        return new ArrayList<>(snapshots);
+    }
+
+    /**
+     * @return The newest snapshot, or null if none was published yet.
+     */
+    public synchronized CryptoMetrics.Snapshot latest() {
+        return snapshots.peekLast();
+    }
+}
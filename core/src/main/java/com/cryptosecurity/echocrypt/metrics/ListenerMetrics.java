@@ -0,0 +1,155 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide count of live snapshot listeners and the document reads each one costs.
+ *
+ * A listener takes a Registration from open() when it attaches, reports every snapshot with
+ * recordSnapshot() and calls close() when it detaches. A listener that is never closed stays
+ * in snapshot().active, which is how leaked listeners show up.
+ */
+public final class ListenerMetrics {
+
+    private static final Set<Registration> ACTIVE = ConcurrentHashMap.newKeySet();
+    private static final LongAdder OPENED = new LongAdder();
+    private static final LongAdder CLOSED = new LongAdder();
+    private static final LongAdder CLOSED_READS = new LongAdder(); // reads of listeners already closed
+
+    private ListenerMetrics() {}
+
+    /**
+     * @param query Short description of what the listener watches, used in reports.
+     */
+    public static Registration open(String query) {
+        Registration registration = new Registration(query);
+        ACTIVE.add(registration);
+        OPENED.increment();
+        return registration;
+    }
+
+    public static Snapshot snapshot() {
+        List<ListenerStats> active = new ArrayList<>();
+        long activeReads = 0;
+        for (Registration registration : ACTIVE) {
+            ListenerStats stats = registration.stats();
+            active.add(stats);
+            activeReads += stats.reads;
+        }
+        return new Snapshot(active, OPENED.sum(), CLOSED.sum(), CLOSED_READS.sum() + activeReads);
+    }
+
+    /**
+     * One attached listener. Thread-safe.
+     */
+    public static final class Registration {
+        private final String query;
+        private final long openedAtNanos = System.nanoTime();
+        private final LongAdder snapshots = new LongAdder();
+        private final LongAdder reads = new LongAdder();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Registration(String query) {
+            this.query = query;
+        }
+
+        /**
+         * @param documentReads Documents the server billed for this snapshot: every document of
+         *                      the first one, then only the changed ones; 0 if served from cache.
+         */
+        public void recordSnapshot(int documentReads) {
+            snapshots.increment();
+            reads.add(documentReads);
+        }
+
+        /**
+         * Detaches the listener from the metrics. Later calls are ignored.
+         * @return The listener's totals over its lifetime.
+         */
+        public ListenerStats close() {
+            ListenerStats stats = stats();
+            if (closed.compareAndSet(false, true)) {
+                ACTIVE.remove(this);
+                CLOSED.increment();
+                CLOSED_READS.add(stats.reads);
+            }
+            return stats;
+        }
+
+        ListenerStats stats() {
+            return new ListenerStats(query, snapshots.sum(), reads.sum(), System.nanoTime() - openedAtNanos);
+        }
+    }
+
+    /**
+     * Totals of one listener.
+     */
+    public static final class ListenerStats {
+        public final String query;
+        public final long snapshots;
+        public final long reads;
+        public final long attachedNanos;
+
+        ListenerStats(String query, long snapshots, long reads, long attachedNanos) {
+            this.query = query;
+            this.snapshots = snapshots;
+            this.reads = reads;
+            this.attachedNanos = attachedNanos;
+        }
+
+        /**
+         * @return e.g. "chats/alice_bob/messages since=1700000000000 snapshots=12 reads=57 attached=93.4s"
+         */
+        public String format() {
+            return String.format(Locale.ROOT, "%s snapshots=%d reads=%d attached=%.1fs",
+                    query, snapshots, reads, attachedNanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+
+    /**
+     * Listener counts and reads since the process started.
+     */
+    public static final class Snapshot {
+        public final List<ListenerStats> active;
+        public final long opened;
+        public final long closed;
+        public final long totalReads; // closed and active listeners alike
+
+        Snapshot(List<ListenerStats> active, long opened, long closed, long totalReads) {
+            this.active = Collections.unmodifiableList(active);
+            this.opened = opened;
+            this.closed = closed;
+            this.totalReads = totalReads;
+        }
+
+        /**
+         * @return A summary line followed by one line per active listener.
+         */
+        public String format() {
+            StringBuilder out = new StringBuilder(String.format(Locale.ROOT,
+                    "listeners active=%d opened=%d closed=%d reads=%d\n",
+                    active.size(), opened, closed, totalReads));
+            for (ListenerStats stats : active) {
+                out.append("  ").append(stats.format()).append('\n');
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+}
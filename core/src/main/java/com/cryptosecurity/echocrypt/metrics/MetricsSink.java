@@ -0,0 +1,12 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+/**
+ * Destination for periodic CryptoMetrics dumps.
+ */
+public interface MetricsSink {
+
+    /**
+     * Called on the metrics thread with one interval's metrics.
+     */
+    void publish(CryptoMetrics.Snapshot snapshot);
+}
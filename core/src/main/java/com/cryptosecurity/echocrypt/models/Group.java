@@ -0,0 +1,47 @@
+package com.cryptosecurity.echocrypt.models;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A group chat, stored at groups/{groupId}. Its messages live in chats/{groupId}/messages.
+ */
+public class Group {
+    private String name;
+    private List<String> memberIds = new ArrayList<>();
+    private String createdBy;
+
+    // A no-argument constructor is required for Firestore deserialization
+    public Group() {}
+
+    public Group(String name, List<String> memberIds, String createdBy) {
+        this.name = name;
+        this.memberIds = memberIds;
+        this.createdBy = createdBy;
+    }
+
+    // --- Getters and Setters ---
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public List<String> getMemberIds() {
+        return memberIds;
+    }
+
+    public void setMemberIds(List<String> memberIds) {
+        this.memberIds = memberIds;
+    }
+
+    public String getCreatedBy() {
+        return createdBy;
+    }
+
+    public void setCreatedBy(String createdBy) {
+        this.createdBy = createdBy;
+    }
+}
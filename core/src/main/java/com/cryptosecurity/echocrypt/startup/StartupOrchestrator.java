@@ -0,0 +1,185 @@
+package com.cryptosecurity.echocrypt.startup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs independent startup phases in parallel and reports when the critical ones are done.
+ *
+ * Every phase starts at once on the executor. criticalDone() completes as soon as the phases
+ * marked critical have finished, successfully or not, so the caller can leave the splash
+ * screen without waiting for background warm-ups. allDone() completes when every phase has
+ * finished. Both complete with a Report of when each phase started and how long it took.
+ *
+ * A phase that throws counts as finished; its failure is recorded in the report and does not
+ * hold up the others.
+ */
+public class StartupOrchestrator {
+
+    public interface Phase {
+        void run() throws Exception;
+    }
+
+    private static final class Entry {
+        final String name;
+        final boolean critical;
+        final Phase phase;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        volatile long startNanos = -1;
+        volatile long endNanos = -1;
+        volatile String failure;
+
+        Entry(String name, boolean critical, Phase phase) {
+            this.name = name;
+            this.critical = critical;
+            this.phase = phase;
+        }
+    }
+
+    private final Executor executor;
+    private final List<Entry> entries = new ArrayList<>();
+    private final CompletableFuture<Report> criticalDone = new CompletableFuture<>();
+    private final CompletableFuture<Report> allDone = new CompletableFuture<>();
+    private long startedAtNanos;
+    private boolean started;
+
+    /**
+     * @param executor Runs the phases; give it one thread per phase for full parallelism.
+     */
+    public StartupOrchestrator(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Adds a phase. Call before start().
+     * @param critical Whether criticalDone() waits for it.
+     */
+    public synchronized StartupOrchestrator add(String name, boolean critical, Phase phase) {
+        if (started) throw new IllegalStateException("Already started");
+        entries.add(new Entry(name, critical, phase));
+        return this;
+    }
+
+    /**
+     * Starts every phase. Later calls are ignored.
+     */
+    public synchronized void start() {
+        if (started) return;
+        started = true;
+        startedAtNanos = System.nanoTime();
+
+        List<CompletableFuture<Void>> critical = new ArrayList<>();
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+        for (Entry entry : entries) {
+            all.add(entry.done);
+            if (entry.critical) critical.add(entry.done);
+        }
+        CompletableFuture.allOf(critical.toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> criticalDone.complete(report()));
+        CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0]))
+                .thenRun(() -> allDone.complete(report()));
+
+        for (Entry entry : entries) {
+            executor.execute(() -> run(entry));
+        }
+    }
+
+    public CompletableFuture<Report> criticalDone() {
+        return criticalDone;
+    }
+
+    public CompletableFuture<Report> allDone() {
+        return allDone;
+    }
+
+    /**
+     * @return The phases so far; ones still running have a negative duration.
+     */
+    public synchronized Report report() {
+        List<PhaseTiming> timings = new ArrayList<>(entries.size());
+        long criticalNanos = 0;
+        for (Entry entry : entries) {
+            long start = entry.startNanos;
+            long end = entry.endNanos;
+            PhaseTiming timing = new PhaseTiming(entry.name, entry.critical,
+                    start < 0 ? -1 : start - startedAtNanos,
+                    start < 0 || end < 0 ? -1 : end - start, entry.failure);
+            timings.add(timing);
+            if (entry.critical && end >= 0) {
+                criticalNanos = Math.max(criticalNanos, end - startedAtNanos);
+            }
+        }
+        return new Report(timings, criticalNanos);
+    }
+
+    private void run(Entry entry) {
+        entry.startNanos = System.nanoTime();
+        try {
+            entry.phase.run();
+        } catch (Exception e) {
+            entry.failure = e.getClass().getSimpleName();
+        } finally {
+            entry.endNanos = System.nanoTime();
+            entry.done.complete(null);
+        }
+    }
+
+    /**
+     * When one phase ran, relative to start().
+     */
+    public static final class PhaseTiming {
+        public final String name;
+        public final boolean critical;
+        public final long startOffsetNanos; // -1 if it has not started
+        public final long durationNanos; // -1 if it has not finished
+        public final String failure; // exception class name, or null on success
+
+        PhaseTiming(String name, boolean critical, long startOffsetNanos, long durationNanos, String failure) {
+            this.name = name;
+            this.critical = critical;
+            this.startOffsetNanos = startOffsetNanos;
+            this.durationNanos = durationNanos;
+            this.failure = failure;
+        }
+    }
+
+    public static final class Report {
+        public final List<PhaseTiming> phases;
+        public final long criticalNanos; // from start() until the last critical phase finished
+
+        Report(List<PhaseTiming> phases, long criticalNanos) {
+            this.phases = Collections.unmodifiableList(phases);
+            this.criticalNanos = criticalNanos;
+        }
+
+        /**
+         * @return e.g. "critical=42ms auth*=+0ms/3ms firestore*=+0ms/41ms keystore=+1ms/180ms contacts=+1ms/running"
+         *         where * marks critical phases, followed by each phase's start offset and duration.
+         */
+        public String format() {
+            StringBuilder out = new StringBuilder(String.format(Locale.ROOT, "critical=%dms", criticalNanos / 1_000_000));
+            for (PhaseTiming phase : phases) {
+                out.append(' ').append(phase.name).append(phase.critical ? "*" : "").append('=');
+                if (phase.startOffsetNanos < 0) {
+                    out.append("queued");
+                    continue;
+                }
+                out.append('+').append(phase.startOffsetNanos / 1_000_000).append("ms/");
+                out.append(phase.durationNanos < 0 ? "running" : phase.durationNanos / 1_000_000 + "ms");
+                if (phase.failure != null) {
+                    out.append('(').append(phase.failure).append(')');
+                }
+            }
+            return out.toString();
+        }
+
+        @Override
+        public String toString() {
+            return format();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import com.cryptosecurity.echocrypt.crypto.MessageEnvelope;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LocalEchoCache.
+ */
+public class LocalEchoCacheTest {
+
+    private static final String ROOM = "alice_bob";
+    private static final String ALICE = "alice";
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+    private final LocalEchoCache cache = new LocalEchoCache(2);
+
+    @Test
+    public void sameIdAndEnvelope_returnsThePlaintext() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, "hello");
+        cache.put(ROOM, "m1", ALICE, envelope, "hello");
+
+        assertEquals("hello", cache.get(ROOM, "m1", ALICE, envelope.clone()));
+    }
+
+    @Test
+    public void differentEnvelopeOrId_isAMiss() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, "hello");
+        cache.put(ROOM, "m1", ALICE, envelope, "hello");
+
+        assertNull(cache.get(ROOM, "m1", ALICE, MessageEnvelope.sealString(key, "hello")));
+        assertNull(cache.get(ROOM, "m2", ALICE, envelope));
+        assertNull(cache.get(ROOM, "m1", ALICE, Arrays.copyOf(envelope, 8)));
+    }
+
+    @Test
+    public void envelopeCopiedToAnotherRoomOrSender_isAMiss() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, "hello");
+        cache.put(ROOM, "m1", ALICE, envelope, "hello");
+
+        assertNull(cache.get("alice_mallory", "m1", ALICE, envelope));
+        assertNull(cache.get(ROOM, "m1", "mallory", envelope));
+        assertNull(cache.get(ROOM, "m1", null, envelope));
+    }
+
+    @Test
+    public void leastRecentlyUsedEntry_isEvicted() throws Exception {
+        byte[] one = MessageEnvelope.sealString(key, "one");
+        byte[] two = MessageEnvelope.sealString(key, "two");
+        byte[] three = MessageEnvelope.sealString(key, "three");
+        cache.put(ROOM, "m1", ALICE, one, "one");
+        cache.put(ROOM, "m2", ALICE, two, "two");
+        cache.get(ROOM, "m1", ALICE, one);
+        cache.put(ROOM, "m3", ALICE, three, "three");
+
+        assertEquals(2, cache.size());
+        assertEquals("one", cache.get(ROOM, "m1", ALICE, one));
+        assertNull(cache.get(ROOM, "m2", ALICE, two));
+        assertEquals("three", cache.get(ROOM, "m3", ALICE, three));
+    }
+}
@@ -0,0 +1,209 @@
+package com.cryptosecurity.echocrypt.chat;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MessageTimeline, run on the host JVM.
+ */
+public class MessageTimelineTest {
+
+    static class Item {
+        final String text;
+        final Date timestamp;
+
+        Item(String text, Long time) {
+            this.text = text;
+            this.timestamp = time != null ? new Date(time) : null;
+        }
+    }
+
+    /**
+     * Replays listener callbacks onto a plain list of ids, the way RecyclerView would.
+     */
+    static class MirrorListener implements MessageTimeline.Listener {
+        final MessageTimeline<Item> timeline;
+        final List<String> ids = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+
+        MirrorListener(MessageTimeline<Item> timeline) {
+            this.timeline = timeline;
+        }
+
+        @Override
+        public void onItemInserted(int position) {
+            ids.add(position, timeline.getId(position));
+            events.add("insert " + position);
+        }
+
+        @Override
+        public void onItemRemoved(int position) {
+            ids.remove(position);
+            events.add("remove " + position);
+        }
+
+        @Override
+        public void onItemMoved(int fromPosition, int toPosition) {
+            ids.add(toPosition, ids.remove(fromPosition));
+            events.add("move " + fromPosition + " " + toPosition);
+        }
+
+        @Override
+        public void onItemChanged(int position) {
+            events.add("change " + position);
+        }
+    }
+
+    private MessageTimeline<Item> timeline;
+    private MirrorListener mirror;
+
+    @Before
+    public void setUp() {
+        timeline = new MessageTimeline<>(item -> item.timestamp);
+        mirror = new MirrorListener(timeline);
+        timeline.setListener(mirror);
+    }
+
+    @Test
+    public void upsert_keepsItemsSortedByTimestamp() {
+        timeline.upsert("c", new Item("c", 30L));
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.upsert("b", new Item("b", 20L));
+
+        assertEquals(3, timeline.size());
+        assertEquals("a", timeline.get(0).text);
+        assertEquals("b", timeline.get(1).text);
+        assertEquals("c", timeline.get(2).text);
+        assertEquals(Arrays.asList("insert 0", "insert 0", "insert 1"), mirror.events);
+    }
+
+    @Test
+    public void pendingItems_sortAfterTimestampedItems_inArrivalOrder() {
+        timeline.upsert("p1", new Item("p1", null));
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.upsert("p2", new Item("p2", null));
+
+        assertEquals(Arrays.asList("a", "p1", "p2"), idsInOrder());
+    }
+
+    @Test
+    public void pendingItem_movesIntoPlaceWhenTimestampArrives() {
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.upsert("c", new Item("c", 30L));
+        timeline.upsert("pending", new Item("b", null));
+        mirror.events.clear();
+
+        timeline.upsert("pending", new Item("b", 20L));
+
+        assertEquals(Arrays.asList("a", "pending", "c"), idsInOrder());
+        assertEquals(Arrays.asList("move 2 1", "change 1"), mirror.events);
+        assertEquals("b", timeline.getById("pending").text);
+    }
+
+    @Test
+    public void upsert_withSameTimestamp_onlyReportsChange() {
+        timeline.upsert("a", new Item("old", 10L));
+        mirror.events.clear();
+
+        timeline.upsert("a", new Item("new", 10L));
+
+        assertEquals(1, timeline.size());
+        assertEquals("new", timeline.get(0).text);
+        assertEquals(Arrays.asList("change 0"), mirror.events);
+    }
+
+    @Test
+    public void equalTimestamps_keepArrivalOrder() {
+        timeline.upsert("first", new Item("first", 10L));
+        timeline.upsert("second", new Item("second", 10L));
+        timeline.upsert("third", new Item("third", 10L));
+
+        assertEquals(Arrays.asList("first", "second", "third"), idsInOrder());
+    }
+
+    @Test
+    public void removeById_reportsPositionAndIgnoresUnknownIds() {
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.upsert("b", new Item("b", 20L));
+        mirror.events.clear();
+
+        assertTrue(timeline.removeById("a"));
+        assertFalse(timeline.removeById("missing"));
+
+        assertEquals(Arrays.asList("b"), idsInOrder());
+        assertEquals(Arrays.asList("remove 0"), mirror.events);
+        assertEquals(-1, timeline.indexOfId("a"));
+        assertEquals(0, timeline.indexOfId("b"));
+    }
+
+    @Test
+    public void countAtOrBefore_isThePositionOfTheFirstLaterItem() {
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.upsert("b1", new Item("b1", 20L));
+        timeline.upsert("b2", new Item("b2", 20L));
+        timeline.upsert("c", new Item("c", 30L));
+        timeline.upsert("pending", new Item("p", null));
+
+        assertEquals(0, timeline.countAtOrBefore(9L));
+        assertEquals(1, timeline.countAtOrBefore(10L));
+        assertEquals(3, timeline.countAtOrBefore(20L));
+        assertEquals(3, timeline.countAtOrBefore(29L));
+        assertEquals(4, timeline.countAtOrBefore(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void get_outOfRange_throws() {
+        timeline.upsert("a", new Item("a", 10L));
+        timeline.get(1);
+    }
+
+    @Test
+    public void randomOperations_matchSortedReferenceAndListenerMirror() {
+        Random random = new Random(42);
+        List<String> live = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int op = random.nextInt(10);
+            if (op < 6 || live.isEmpty()) {
+                String id = "m" + i;
+                Long time = random.nextInt(5) == 0 ? null : (long) random.nextInt(1000);
+                timeline.upsert(id, new Item(id, time));
+                live.add(id);
+            } else if (op < 9) {
+                String id = live.get(random.nextInt(live.size()));
+                timeline.upsert(id, new Item(id, (long) random.nextInt(1000)));
+            } else {
+                String id = live.remove(random.nextInt(live.size()));
+                assertTrue(timeline.removeById(id));
+            }
+        }
+
+        assertEquals(live.size(), timeline.size());
+        assertEquals(idsInOrder(), mirror.ids);
+        for (int i = 1; i < timeline.size(); i++) {
+            assertTrue(sortKey(timeline.get(i - 1)) <= sortKey(timeline.get(i)));
+        }
+        for (int i = 0; i < timeline.size(); i++) {
+            assertEquals(i, timeline.indexOfId(timeline.getId(i)));
+        }
+    }
+
+    private List<String> idsInOrder() {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < timeline.size(); i++) {
+            ids.add(timeline.getId(i));
+        }
+        return ids;
+    }
+
+    private static long sortKey(Item item) {
+        return item.timestamp != null ? item.timestamp.getTime() : Long.MAX_VALUE;
+    }
+}
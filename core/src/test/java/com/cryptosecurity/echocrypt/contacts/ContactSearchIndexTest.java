@@ -0,0 +1,106 @@
+package com.cryptosecurity.echocrypt.contacts;
+
+import com.cryptosecurity.echocrypt.models.User;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ContactSearchIndex, checked against the plain contains() filter it replaces.
+ */
+public class ContactSearchIndexTest {
+
+    private static final String[] DOMAINS = {"gmail.com", "outlook.com", "echocrypt.dev", "uni.edu"};
+
+    @Test
+    public void search_matchesSubstringsIgnoringCase_inListOrder() {
+        List<User> contacts = Arrays.asList(
+                user("Alice@Example.com"), user("bob@example.com"), user("carol@gmail.com"), user(null));
+        ContactSearchIndex index = new ContactSearchIndex(contacts);
+
+        assertEquals(emails(contacts.subList(0, 2)), emails(index.search("EXAMPLE")));
+        assertEquals(emails(contacts.subList(0, 1)), emails(index.search("ali")));
+        assertEquals(emails(contacts.subList(2, 3)), emails(index.search("l@g")));
+        assertEquals(4, index.search("").size());
+        assertTrue(index.search("zzz").isEmpty());
+    }
+
+    @Test
+    public void sortedByEmail_ordersByNormalizedEmail() {
+        List<User> contacts = Arrays.asList(
+                user("carol@gmail.com"), user(" Bob@example.com"), user(null), user("alice@example.com"));
+        ContactSearchIndex index = ContactSearchIndex.sortedByEmail(contacts);
+
+        assertEquals(Arrays.asList(null, "alice@example.com", " Bob@example.com", "carol@gmail.com"),
+                emails(index.getContacts()));
+        assertEquals(Arrays.asList("alice@example.com", " Bob@example.com"), emails(index.search("EXAMPLE")));
+    }
+
+    @Test
+    public void search_agreesWithLinearScan() {
+        List<User> contacts = directory(5_000, new Random(3));
+        ContactSearchIndex index = new ContactSearchIndex(contacts);
+
+        for (String query : new String[]{"a", "an", "ann", "gmail", "@uni", "son1", ".dev", "x9", "hannah.k"}) {
+            assertEquals(query, emails(linearScan(contacts, query)), emails(index.search(query)));
+        }
+    }
+
+    @Test
+    public void search_at50kContacts_staysUnderAFrame() {
+        Random random = new Random(5);
+        List<User> contacts = directory(50_000, random);
+        ContactSearchIndex index = new ContactSearchIndex(contacts);
+
+        String[] queries = {"a", "jo", "mar", "smith", "gmail", "@echocrypt", "son4", "ella.b"};
+        for (int warmup = 0; warmup < 20; warmup++) {
+            for (String query : queries) index.search(query);
+        }
+        long start = System.nanoTime();
+        int rounds = 50;
+        for (int i = 0; i < rounds; i++) {
+            for (String query : queries) index.search(query);
+        }
+        double perQuery = (System.nanoTime() - start) / 1e6 / (rounds * queries.length);
+        assertTrue("average query took " + perQuery + " ms", perQuery < 16);
+    }
+
+    private static List<User> directory(int size, Random random) {
+        String[] first = {"ann", "john", "maria", "hannah", "joseph", "ella", "mark", "li", "omar", "sofia"};
+        String[] last = {"smith", "brown", "kumar", "nguyen", "garcia", "jensen", "okafor", "rossi"};
+        List<User> contacts = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String email = first[random.nextInt(first.length)] + "." + last[random.nextInt(last.length)].charAt(0)
+                    + last[random.nextInt(last.length)] + i + "@" + DOMAINS[random.nextInt(DOMAINS.length)];
+            contacts.add(user(random.nextBoolean() ? email : email.toUpperCase(Locale.ROOT)));
+        }
+        return contacts;
+    }
+
+    private static List<User> linearScan(List<User> contacts, String query) {
+        List<User> results = new ArrayList<>();
+        for (User contact : contacts) {
+            if (contact.getEmail().toLowerCase(Locale.ROOT).contains(query.toLowerCase(Locale.ROOT))) {
+                results.add(contact);
+            }
+        }
+        return results;
+    }
+
+    private static User user(String email) {
+        return new User(email, "uid-" + email, null);
+    }
+
+    private static List<String> emails(List<User> users) {
+        List<String> emails = new ArrayList<>();
+        for (User user : users) emails.add(user.getEmail());
+        return emails;
+    }
+}
@@ -0,0 +1,129 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the chunked AttachmentCipher stream format.
+ */
+public class AttachmentCipherTest {
+
+    private static final int CHUNK = 1024;
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    public void roundTrip_atChunkBoundaries() throws Exception {
+        for (int length : new int[]{0, 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK, 3 * CHUNK + 17}) {
+            byte[] plain = randomBytes(length);
+            byte[] sealed = seal(plain);
+
+            assertEquals(AttachmentCipher.getEncryptedLength(length, CHUNK), sealed.length);
+            assertArrayEquals(plain, open(sealed));
+        }
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void truncationAtChunkBoundary_isDetected() throws Exception {
+        byte[] sealed = seal(randomBytes(3 * CHUNK + 5));
+        int sealedChunk = CHUNK + 16;
+        open(Arrays.copyOf(sealed, AttachmentCipher.HEADER_LENGTH + 2 * sealedChunk));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void reorderedChunks_areDetected() throws Exception {
+        byte[] sealed = seal(randomBytes(3 * CHUNK));
+        int sealedChunk = CHUNK + 16;
+        int first = AttachmentCipher.HEADER_LENGTH;
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, first, swapped, first + sealedChunk, sealedChunk);
+        System.arraycopy(sealed, first + sealedChunk, swapped, first, sealedChunk);
+        open(swapped);
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void tamperedHeader_isDetected() throws Exception {
+        byte[] sealed = seal(randomBytes(100));
+        sealed[AttachmentCipher.HEADER_LENGTH - 1] ^= 1; // nonce prefix
+        open(sealed);
+    }
+
+    @Test
+    public void largeStream_isProcessedWithoutBuffering() throws Exception {
+        long length = 64L * 1024 * 1024;
+        CountingOutputStream sealed = new CountingOutputStream();
+
+        AttachmentCipher.encrypt(key, new ZeroInputStream(length), sealed);
+
+        assertEquals(AttachmentCipher.getEncryptedLength(length, AttachmentCipher.DEFAULT_CHUNK_SIZE), sealed.count);
+    }
+
+    private byte[] seal(byte[] plain) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AttachmentCipher.encrypt(key, CHUNK, Channels.newChannel(new ByteArrayInputStream(plain)), Channels.newChannel(out));
+        return out.toByteArray();
+    }
+
+    private byte[] open(byte[] sealed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        AttachmentCipher.decrypt(key, new ByteArrayInputStream(sealed), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static class ZeroInputStream extends InputStream {
+        private long remaining;
+
+        ZeroInputStream(long length) {
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() {
+            if (remaining == 0) return -1;
+            remaining--;
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining == 0) return -1;
+            int n = (int) Math.min(len, remaining);
+            Arrays.fill(b, off, off + n, (byte) 0);
+            remaining -= n;
+            return n;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for BulkDecryptor's ordering and its sequential fallback.
+ */
+public class BulkDecryptorTest {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+    private final BulkDecryptor decryptor = new BulkDecryptor(POOL);
+
+    @AfterClass
+    public static void tearDown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void largeBatch_isDecryptedInInputOrder() throws Exception {
+        List<byte[]> envelopes = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            envelopes.add(MessageEnvelope.sealString(key, "message " + i));
+        }
+
+        List<String> plainTexts = decryptor.map(envelopes, envelope -> EncryptionHelper.decryptEnvelope(envelope, key));
+
+        assertEquals(envelopes.size(), plainTexts.size());
+        for (int i = 0; i < plainTexts.size(); i++) {
+            assertEquals("message " + i, plainTexts.get(i));
+        }
+    }
+
+    @Test
+    public void largeBatch_isSpreadAcrossWorkers() {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        decryptor.map(Collections.nCopies(10_000, 0), item -> {
+            threads.add(Thread.currentThread());
+            busyWork();
+            return item;
+        });
+
+        assertTrue(threads.size() > 1);
+        assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void smallBatch_runsOnTheCallingThread() {
+        Set<Thread> threads = new HashSet<>();
+        List<Integer> items = new ArrayList<>();
+        for (int i = 0; i < BulkDecryptor.DEFAULT_SEQUENTIAL_THRESHOLD - 1; i++) items.add(i);
+
+        List<Integer> doubled = decryptor.map(items, item -> {
+            threads.add(Thread.currentThread());
+            return item * 2;
+        });
+
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+        assertEquals(Integer.valueOf(2 * (items.size() - 1)), doubled.get(items.size() - 1));
+    }
+
+    @Test
+    public void emptyBatch_returnsEmptyList() {
+        assertTrue(decryptor.map(new ArrayList<Integer>(), item -> item).isEmpty());
+    }
+
+    private static void busyWork() {
+        long sum = 0;
+        for (int i = 0; i < 20_000; i++) sum += i * 31L;
+        if (sum == 42) throw new AssertionError();
+    }
+}
@@ -0,0 +1,90 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the MessageEnvelope wire format and its compression stage.
+ */
+public class MessageEnvelopeTest {
+
+    private final SecretKey key = new SecretKeySpec(new byte[32], "AES");
+
+    @Test
+    public void shortMessage_isSealedUncompressed() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, "see you at lunch ✓");
+
+        assertEquals(0, MessageEnvelope.getFlags(envelope));
+        assertEquals("see you at lunch ✓", MessageEnvelope.openString(key, envelope));
+    }
+
+    @Test
+    public void longRepetitiveMessage_isCompressed() throws Exception {
+        String log = repeat("I/ChatActivity: onMessagesDecrypted batch=50\n", 200);
+        byte[] envelope = MessageEnvelope.sealString(key, log);
+
+        assertEquals(MessageEnvelope.FLAG_DEFLATE, MessageEnvelope.getFlags(envelope));
+        assertTrue(envelope.length < log.length() / 10);
+        assertEquals(log, MessageEnvelope.openString(key, envelope));
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void clearingTheCompressionFlag_failsAuthentication() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, repeat("abc", 500));
+        envelope[1] = 0;
+        MessageEnvelope.openString(key, envelope);
+    }
+
+    @Test(expected = DataFormatException.class)
+    public void compressionBomb_isRejected() throws Exception {
+        byte[] zeros = new byte[MessageEnvelope.MAX_PLAINTEXT_LENGTH + 1];
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        deflater.setInput(zeros);
+        deflater.finish();
+        byte[] compressed = new byte[8192];
+        int length = deflater.deflate(compressed);
+        assertTrue(deflater.finished());
+
+        byte[] envelope = MessageEnvelope.seal(key, MessageEnvelope.FLAG_DEFLATE, compressed, 0, length);
+        MessageEnvelope.openString(key, envelope);
+    }
+
+    @Test(expected = GeneralSecurityException.class)
+    public void wrongKey_isRejected() throws Exception {
+        byte[] envelope = MessageEnvelope.sealString(key, "hello");
+        byte[] otherKey = new byte[32];
+        otherKey[0] = 1;
+        MessageEnvelope.openString(new SecretKeySpec(otherKey, "AES"), envelope);
+    }
+
+    @Test
+    public void compressor_returnsNullForRandomBytes() {
+        byte[] random = new byte[3000];
+        new java.util.Random(7).nextBytes(random);
+        assertNull(MessageCompressor.compress(random, 0, random.length));
+    }
+
+    @Test
+    public void compressor_returnsNullWhenSavingIsTooSmall() {
+        byte[] plain = "abcdefghijklmnopqrstuvwxyz0123456789".getBytes(StandardCharsets.UTF_8);
+        assertNull(MessageCompressor.compress(plain, 0, plain.length));
+    }
+
+    private static String repeat(String text, int times) {
+        char[] chars = new char[text.length() * times];
+        for (int i = 0; i < times; i++) {
+            text.getChars(0, text.length(), chars, i * text.length());
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,144 @@
+package com.cryptosecurity.echocrypt.crypto;
+
+import com.cryptosecurity.echocrypt.metrics.CryptoMetrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SenderKey wrapping and the SenderKeyRing's lookup and rotation rules.
+ */
+public class SenderKeyTest {
+
+    private static final String GROUP = "group1";
+
+    private final SecretKey pairwise = new SecretKeySpec(new byte[32], "AES");
+
+    @After
+    public void tearDown() {
+        CryptoMetrics.snapshotAndReset();
+    }
+
+    @Test
+    public void wrappedKey_unwrapsForItsRecipient() throws Exception {
+        SenderKey senderKey = SenderKey.generate(GROUP, "alice", 3);
+        byte[] wrapped = senderKey.wrapFor("bob", pairwise);
+
+        SenderKey unwrapped = SenderKey.unwrap(GROUP, "alice", "bob", 3, pairwise, wrapped);
+
+        assertArrayEquals(senderKey.key.getEncoded(), unwrapped.key.getEncoded());
+        assertEquals(3, unwrapped.epoch);
+    }
+
+    @Test
+    public void wrappedKey_cannotBeReplayedElsewhere() throws Exception {
+        SenderKey senderKey = SenderKey.generate(GROUP, "alice", 1);
+        byte[] wrapped = senderKey.wrapFor("bob", pairwise);
+
+        assertUnwrapFails("group2", "alice", "bob", 1, wrapped);
+        assertUnwrapFails(GROUP, "mallory", "bob", 1, wrapped);
+        assertUnwrapFails(GROUP, "alice", "carol", 1, wrapped);
+        assertUnwrapFails(GROUP, "alice", "bob", 2, wrapped);
+    }
+
+    @Test
+    public void largeGroup_costsOneEncryptionPerMessage() throws Exception {
+        SenderKeyRing alice = new SenderKeyRing("alice");
+        Set<String> members = members(200);
+        SenderKey senderKey = alice.rotate(GROUP);
+        Map<String, SenderKeyRing> rings = new HashMap<>();
+        for (String member : members) {
+            SenderKeyRing ring = new SenderKeyRing(member);
+            ring.add(SenderKey.unwrap(GROUP, "alice", member, senderKey.epoch, pairwise,
+                    senderKey.wrapFor(member, pairwise)));
+            rings.put(member, ring);
+        }
+        alice.markDistributed(senderKey, members);
+        CryptoMetrics.setEnabled(true);
+        CryptoMetrics.snapshotAndReset();
+
+        byte[] envelope = EncryptionHelper.encryptToEnvelope("hello everyone",
+                alice.sendingKey(GROUP, members).key);
+
+        assertEquals(1, CryptoMetrics.snapshot().get(CryptoMetrics.Op.SEAL_ENVELOPE).successes);
+        for (SenderKeyRing ring : rings.values()) {
+            assertEquals("hello everyone", MessageEnvelope.openString(ring.find(GROUP, envelope).key, envelope));
+        }
+    }
+
+    @Test
+    public void membershipChange_requiresRotation_butOldMessagesStillOpen() throws Exception {
+        SenderKeyRing ring = new SenderKeyRing("alice");
+        Set<String> members = members(3);
+        SenderKey first = ring.rotate(GROUP);
+        assertNull(ring.sendingKey(GROUP, members)); // not distributed yet
+        ring.markDistributed(first, members);
+        assertSame(first, ring.sendingKey(GROUP, members));
+        byte[] before = MessageEnvelope.sealString(first.key, "before");
+
+        members.remove("member1");
+        assertNull(ring.sendingKey(GROUP, members));
+        SenderKey second = ring.rotate(GROUP);
+        ring.markDistributed(second, members);
+
+        assertEquals(first.epoch + 1, second.epoch);
+        assertSame(second, ring.sendingKey(GROUP, members));
+        assertSame(first, ring.find(GROUP, before));
+    }
+
+    @Test
+    public void restoredOwnKey_isNotSentWithUntilItsRecipientsAreKnown() throws Exception {
+        Set<String> members = members(2);
+        SenderKey restored = SenderKey.generate(GROUP, "alice", 4);
+        SenderKeyRing ring = new SenderKeyRing("alice");
+
+        ring.add(restored);
+        assertNull(ring.sendingKey(GROUP, members));
+        ring.markDistributed(restored, members);
+        assertSame(restored, ring.sendingKey(GROUP, members));
+        assertEquals(5, ring.rotate(GROUP).epoch);
+    }
+
+    @Test
+    public void keyFromAnotherGroup_isNotUsed() throws Exception {
+        SenderKeyRing ring = new SenderKeyRing("bob");
+        SenderKey otherGroup = SenderKey.generate("group2", "alice", 1);
+        ring.add(otherGroup);
+
+        byte[] envelope = MessageEnvelope.sealString(otherGroup.key, "hi");
+
+        assertSame(otherGroup, ring.find("group2", envelope));
+        assertNull(ring.find(GROUP, envelope));
+    }
+
+    private void assertUnwrapFails(String groupId, String senderId, String recipientId, int epoch, byte[] wrapped) {
+        try {
+            SenderKey.unwrap(groupId, senderId, recipientId, epoch, pairwise, wrapped);
+            fail("Unwrapped with the wrong context");
+        } catch (GeneralSecurityException expected) {
+            // the context is authenticated
+        }
+    }
+
+    private static Set<String> members(int count) {
+        List<String> ids = new ArrayList<>();
+        ids.add("alice");
+        for (int i = 1; i < count; i++) {
+            ids.add("member" + i);
+        }
+        return new HashSet<>(ids);
+    }
+}
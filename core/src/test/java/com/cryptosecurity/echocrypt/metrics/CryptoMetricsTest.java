@@ -0,0 +1,118 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for Histogram and CryptoMetrics.
+ */
+public class CryptoMetricsTest {
+
+    @Before
+    public void setUp() {
+        CryptoMetrics.setEnabled(true);
+        CryptoMetrics.snapshotAndReset();
+    }
+
+    @After
+    public void tearDown() {
+        CryptoMetrics.setEnabled(true);
+        CryptoMetrics.stopPeriodicDump();
+    }
+
+    @Test
+    public void histogramBuckets_coverEveryValue_within25Percent() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int bucket = Histogram.bucketOf(value);
+            long upper = Histogram.upperBoundOf(bucket);
+            assertTrue(value + " above its bucket", value <= upper);
+            if (bucket > 0) {
+                assertTrue(value + " below its bucket", value > Histogram.upperBoundOf(bucket - 1));
+            }
+            assertTrue(value + " bucket too wide", upper - value <= Math.max(0, value / 4));
+        }
+        assertEquals(Long.MAX_VALUE, Histogram.upperBoundOf(Histogram.bucketOf(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void histogramPercentiles_trackTheDistribution() {
+        Histogram histogram = new Histogram();
+        for (long value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.count);
+        assertEquals(500.5, snapshot.mean(), 1e-9);
+        assertEquals(1000, snapshot.max);
+        assertEquals(500, snapshot.percentile(50), 125);
+        assertEquals(990, snapshot.percentile(99), 250);
+        assertEquals(1000, snapshot.percentile(100));
+        assertEquals(0, new Histogram().snapshot().percentile(50));
+    }
+
+    @Test
+    public void recordsSuccessesPayloadsAndFailuresByCause() {
+        for (int i = 0; i < 10; i++) {
+            CryptoMetrics.recordSuccess(CryptoMetrics.Op.OPEN_ENVELOPE, CryptoMetrics.start(), 100 + i);
+        }
+        CryptoMetrics.recordFailure(CryptoMetrics.Op.OPEN_ENVELOPE, CryptoMetrics.start(), new javax.crypto.AEADBadTagException());
+        CryptoMetrics.recordFailure(CryptoMetrics.Op.OPEN_ENVELOPE, CryptoMetrics.start(), new javax.crypto.AEADBadTagException());
+        CryptoMetrics.recordFailure(CryptoMetrics.Op.GET_PRIVATE_KEY, CryptoMetrics.start(), "MissingKey");
+
+        CryptoMetrics.Snapshot snapshot = CryptoMetrics.snapshot();
+        CryptoMetrics.OpStats open = snapshot.get(CryptoMetrics.Op.OPEN_ENVELOPE);
+        assertEquals(10, open.successes);
+        assertEquals(2, open.failures());
+        assertEquals(Long.valueOf(2), open.failuresByCause.get("AEADBadTagException"));
+        assertEquals(12, open.latencyNanos.count);
+        assertEquals(10, open.payloadBytes.count);
+        assertEquals(109, open.payloadBytes.max);
+        assertEquals(Long.valueOf(1), snapshot.get(CryptoMetrics.Op.GET_PRIVATE_KEY).failuresByCause.get("MissingKey"));
+        assertEquals(0, snapshot.get(CryptoMetrics.Op.ENCRYPT).latencyNanos.count);
+
+        String dump = snapshot.format();
+        assertTrue(dump, dump.contains("OPEN_ENVELOPE n=12"));
+        assertTrue(dump, dump.contains("AEADBadTagException=2"));
+        assertFalse(dump, dump.contains("ENCRYPT"));
+    }
+
+    @Test
+    public void snapshotAndReset_startsANewInterval() {
+        CryptoMetrics.recordSuccess(CryptoMetrics.Op.ENCRYPT, CryptoMetrics.start(), 64);
+        assertFalse(CryptoMetrics.snapshotAndReset().isEmpty());
+        assertTrue(CryptoMetrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void disabled_recordsNothing() {
+        CryptoMetrics.setEnabled(false);
+        CryptoMetrics.recordSuccess(CryptoMetrics.Op.DECRYPT, CryptoMetrics.start(), 64);
+        CryptoMetrics.recordFailure(CryptoMetrics.Op.DECRYPT, CryptoMetrics.start(), "Any");
+        assertTrue(CryptoMetrics.snapshot().isEmpty());
+    }
+
+    @Test
+    public void periodicDump_publishesNonEmptyIntervals_toTheSink() throws InterruptedException {
+        InMemoryMetricsSink sink = new InMemoryMetricsSink(2);
+        CryptoMetrics.recordSuccess(CryptoMetrics.Op.KEY_AGREEMENT, CryptoMetrics.start(), 0);
+        CryptoMetrics.startPeriodicDump(sink, 20);
+
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (sink.latest() == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100); // later intervals are empty and must not be published
+        CryptoMetrics.stopPeriodicDump();
+
+        assertEquals(1, sink.getSnapshots().size());
+        assertEquals(1, sink.latest().get(CryptoMetrics.Op.KEY_AGREEMENT).successes);
+    }
+}
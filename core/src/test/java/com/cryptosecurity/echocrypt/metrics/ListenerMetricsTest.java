@@ -0,0 +1,45 @@
+package com.cryptosecurity.echocrypt.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ListenerMetrics.
+ */
+public class ListenerMetricsTest {
+
+    @Test
+    public void openListeners_areCountedUntilClosed() {
+        ListenerMetrics.Snapshot before = ListenerMetrics.snapshot();
+
+        ListenerMetrics.Registration first = ListenerMetrics.open("chats/a/messages newest=50");
+        ListenerMetrics.Registration second = ListenerMetrics.open("chats/b/messages since=1000");
+        assertEquals(before.active.size() + 2, ListenerMetrics.snapshot().active.size());
+
+        first.close();
+        first.close(); // ignored
+
+        ListenerMetrics.Snapshot after = ListenerMetrics.snapshot();
+        assertEquals(before.active.size() + 1, after.active.size());
+        assertEquals(before.opened + 2, after.opened);
+        assertEquals(before.closed + 1, after.closed);
+        second.close();
+    }
+
+    @Test
+    public void reads_areAttributedToTheirListener_andKeptAfterClose() {
+        long readsBefore = ListenerMetrics.snapshot().totalReads;
+        ListenerMetrics.Registration registration = ListenerMetrics.open("chats/c/messages newest=50");
+
+        registration.recordSnapshot(50);
+        registration.recordSnapshot(1);
+        registration.recordSnapshot(0);
+
+        ListenerMetrics.ListenerStats stats = registration.close();
+        assertEquals(3, stats.snapshots);
+        assertEquals(51, stats.reads);
+        assertEquals(readsBefore + 51, ListenerMetrics.snapshot().totalReads);
+        assertTrue(stats.format(), stats.format().startsWith("chats/c/messages newest=50 snapshots=3 reads=51"));
+    }
+}
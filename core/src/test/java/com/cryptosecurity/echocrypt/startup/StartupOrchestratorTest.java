@@ -0,0 +1,101 @@
+package com.cryptosecurity.echocrypt.startup;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StartupOrchestrator.
+ */
+public class StartupOrchestratorTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void criticalDone_doesNotWaitForBackgroundPhases() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor)
+                .add("auth", true, () -> {})
+                .add("firestore", true, () -> Thread.sleep(20))
+                .add("contacts", false, release::await);
+
+        orchestrator.start();
+        StartupOrchestrator.Report report = orchestrator.criticalDone().get(5, TimeUnit.SECONDS);
+
+        assertFalse(orchestrator.allDone().isDone());
+        assertTrue(report.criticalNanos >= TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(-1, report.phases.get(2).durationNanos);
+        assertTrue(report.format(), report.format().contains("contacts=+"));
+        assertTrue(report.format(), report.format().endsWith("/running"));
+
+        release.countDown();
+        StartupOrchestrator.Report all = orchestrator.allDone().get(5, TimeUnit.SECONDS);
+        assertTrue(all.phases.get(2).durationNanos >= 0);
+    }
+
+    @Test
+    public void phasesRunInParallel() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor)
+                .add("keystore", true, () -> awaitOther(bothRunning))
+                .add("firestore", true, () -> awaitOther(bothRunning));
+
+        orchestrator.start();
+        StartupOrchestrator.Report report = orchestrator.criticalDone().get(5, TimeUnit.SECONDS);
+
+        // Sequentially the first phase would have timed out waiting for the second
+        assertNull(report.phases.get(0).failure);
+        assertNull(report.phases.get(1).failure);
+    }
+
+    @Test
+    public void failingPhase_isRecordedAndDoesNotBlock() throws Exception {
+        StartupOrchestrator orchestrator = new StartupOrchestrator(executor)
+                .add("keystore", true, () -> {
+                    throw new IllegalStateException("no key");
+                })
+                .add("auth", true, () -> {});
+
+        orchestrator.start();
+        StartupOrchestrator.Report report = orchestrator.allDone().get(5, TimeUnit.SECONDS);
+
+        assertEquals("IllegalStateException", report.phases.get(0).failure);
+        assertTrue(report.format(), report.format().contains("(IllegalStateException)"));
+        assertNull(report.phases.get(1).failure);
+    }
+
+    @Test
+    public void noCriticalPhases_isReadyImmediately() {
+        StartupOrchestrator orchestrator = new StartupOrchestrator(Runnable::run);
+        orchestrator.start();
+        orchestrator.start(); // ignored
+
+        assertTrue(orchestrator.criticalDone().isDone());
+        assertTrue(orchestrator.allDone().isDone());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void add_afterStart_throws() {
+        StartupOrchestrator orchestrator = new StartupOrchestrator(Runnable::run);
+        orchestrator.start();
+        orchestrator.add("late", false, () -> {});
+    }
+
+    private static void awaitOther(CountDownLatch bothRunning) throws Exception {
+        bothRunning.countDown();
+        if (!bothRunning.await(2, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Phases did not overlap");
+        }
+    }
+}